@@ -1,10 +1,20 @@
 package ascii_art;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class Algorithms {
+    private static final int DUPLICATE_BUCKETS = 1 << 16;
+    private static final int CHUNK_INTS = 1 << 24;
+
     /**
      * Finds the only duplicated number that appears in the given list. Initializes 2 fields. The first runs on all
      * the given list as a linked list - for each number (from 1 to n) skips to the number that is stored in it's
@@ -32,51 +42,137 @@ public class Algorithms {
     }
 
     /**
-     * Finds the unique morse words in thw given array. Runs through all words and creates a list of each word's
-     * characters. Converts each character (letter) to a morse character and concatenates it to the previous
-     * characters from this word converted to morse characters. Finally adds it to a set. If this word already
-     * was in the set, it doesn't adds it. Returns the length of the created set which includes only the unique
-     * morse words.
-     * @param words words to convert to morse words.
-     * @return The unique morse words.
+     * Finds the only duplicated number in the given file of numbers, without loading the file to the heap. The
+     * file is memory mapped in chunks, which are scanned in parallel, twice. The first scan counts the numbers
+     * in each of DUPLICATE_BUCKETS equal ranges of values - since only the duplicated number appears more than
+     * once, the range whose count is larger than its number of values holds it. The second scan counts each
+     * value of that range. Both scans read the file sequentially, so it can be larger than 2GB and than memory.
+     * @param numbersFile path of a binary file of n + 1 integers from 1 to n, each of 4 bytes, big endian (as
+     *                    written by DataOutputStream.writeInt).
+     * @return the duplicated number.
+     * @throws IOException if the file can't be read.
+     * @throws IllegalArgumentException if the file isn't a list of n + 1 integers from 1 to n.
      */
-    public static int uniqueMorseRepresentations(String[] words) {
-        Map<Character, String> morseMap = new HashMap<>();
-        morseMap.put('a', ".-");
-        morseMap.put('b', "-...");
-        morseMap.put('c', "-.-.");
-        morseMap.put('d', "-..");
-        morseMap.put('e', ".");
-        morseMap.put('f', "..-.");
-        morseMap.put('g', "--.");
-        morseMap.put('h', "....");
-        morseMap.put('i', "..");
-        morseMap.put('j', ".---");
-        morseMap.put('k', "-.-");
-        morseMap.put('l', ".-..");
-        morseMap.put('m', "--");
-        morseMap.put('n', "-.");
-        morseMap.put('o', "---");
-        morseMap.put('p', ".--.");
-        morseMap.put('q', "--.-");
-        morseMap.put('r', ".-.");
-        morseMap.put('s', "...");
-        morseMap.put('t', "-");
-        morseMap.put('u', "..-");
-        morseMap.put('v', "...-");
-        morseMap.put('w', ".--");
-        morseMap.put('x', "-..-");
-        morseMap.put('y', "-.--");
-        morseMap.put('z', "--..");
-        HashSet<String> morseWords = new HashSet<>();
-        for (String word: words) {
-            char[] letters = word.toCharArray();
-            String morseWord = "";
-            for (char letter: letters) {
-                morseWord += morseMap.get(letter);
+    public static int findDuplicate(Path numbersFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(numbersFile, StandardOpenOption.READ)) {
+            long numInts = channel.size() / Integer.BYTES;
+            if (channel.size() % Integer.BYTES != 0 || numInts < 2 || numInts - 1 > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Not a list of n + 1 integers: " + numbersFile);
+            int n = (int) (numInts - 1);
+            int bucketWidth = (int) (((long) n + DUPLICATE_BUCKETS - 1) / DUPLICATE_BUCKETS);
+            long[] bucketCounts = countValues(channel, n, 1, n, bucketWidth);
+            for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+                int low = bucket * bucketWidth + 1;
+                int high = (int) Math.min(n, (long) low + bucketWidth - 1);
+                if (bucketCounts[bucket] > high - low + 1) {
+                    long[] valueCounts = countValues(channel, n, low, high, 1);
+                    for (int value = low; value <= high; value++) {
+                        if (valueCounts[value - low] > 1)
+                            return value;
+                    }
+                }
             }
-            morseWords.add(morseWord);
+            throw new IllegalArgumentException("No duplicated number in " + numbersFile);
+        }
+    }
+
+    /**
+     * Counts, on all cores, the numbers of the file in each range of bucketWidth values from low to high.
+     * Numbers outside [low, high] are skipped.
+     * @param channel the file, a list of n + 1 integers.
+     * @return the count of every range, in order.
+     * @throws IllegalArgumentException if a number of the file isn't between 1 and n.
+     */
+    private static long[] countValues(FileChannel channel, int n, int low, int high, int bucketWidth)
+            throws IOException {
+        long numInts = (long) n + 1;
+        int numBuckets = (int) (((long) high - low) / bucketWidth + 1);
+        int numChunks = (int) ((numInts + CHUNK_INTS - 1) / CHUNK_INTS);
+        try {
+            return IntStream.range(0, numChunks).parallel()
+                    .mapToObj(chunk -> countChunk(channel, chunk, n, low, high, bucketWidth, numBuckets))
+                    .reduce((counts, other) -> {
+                        for (int bucket = 0; bucket < numBuckets; bucket++)
+                            counts[bucket] += other[bucket];
+                        return counts;
+                    })
+                    .orElseThrow();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
+
+    /**
+     * Maps a single chunk of CHUNK_INTS integers of the file and counts its numbers in the ranges.
+     */
+    private static long[] countChunk(FileChannel channel, int chunk, int n, int low, int high, int bucketWidth,
+                                     int numBuckets) {
+        long start = (long) chunk * CHUNK_INTS;
+        int length = (int) Math.min(CHUNK_INTS, (long) n + 1 - start);
+        IntBuffer numbers;
+        try {
+            numbers = channel.map(FileChannel.MapMode.READ_ONLY, start * Integer.BYTES,
+                                  (long) length * Integer.BYTES).asIntBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long[] counts = new long[numBuckets];
+        for (int i = 0; i < length; i++) {
+            int number = numbers.get(i);
+            if (number < 1 || number > n)
+                throw new IllegalArgumentException("Number out of range 1 to " + n + ": " + number);
+            if (number >= low && number <= high)
+                counts[(number - low) / bucketWidth]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Finds the unique morse words in thw given array. Runs through all words and converts each word to its
+     * morse code. Finally adds it to a set. If this morse word already was in the set, it doesn't adds it.
+     * Returns the size of the created set which includes only the unique morse words.
+     * @param words words of lowercase English letters to convert to morse words.
+     * @return The unique morse words.
+     */
+    public static int uniqueMorseRepresentations(String[] words) {
+        return uniqueMorseRepresentations(Arrays.asList(words));
+    }
+
+    /**
+     * Finds the unique morse words in the given words. Each word is converted to its morse code, packed as bits
+     * (a bit for each dot or dash and a bit that marks the length) in a reusable buffer, and added to a set of
+     * primitive longs, so no String is created per word.
+     * @param words words of lowercase English letters to convert to morse words.
+     * @return The number of unique morse words.
+     */
+    public static int uniqueMorseRepresentations(Iterable<String> words) {
+        MorseCodeSet morseWords = new MorseCodeSet();
+        for (String word: words)
+            morseWords.add(word);
         return morseWords.size();
     }
+
+    /**
+     * Finds the unique morse words in the given stream of words. If the stream is parallel, each thread
+     * collects the morse codes of its part of the stream to a set of its own, and the sets are merged at the end.
+     * Memory is bounded by the number of unique morse words, not by the number of words.
+     * @param words words of lowercase English letters to convert to morse words.
+     * @return The number of unique morse words.
+     */
+    public static int uniqueMorseRepresentations(Stream<String> words) {
+        return words.collect(MorseCodeSet::new, MorseCodeSet::add, MorseCodeSet::addAll).size();
+    }
+
+    /**
+     * Finds the unique morse words in the given file, which holds one word in each line. The file is streamed
+     * and its lines are processed in parallel on all cores.
+     * @param wordsFile path of a text file with one word of lowercase English letters in each line.
+     * @return The number of unique morse words.
+     * @throws IOException if the file can't be read.
+     */
+    public static int uniqueMorseRepresentations(Path wordsFile) throws IOException {
+        try (Stream<String> lines = Files.lines(wordsFile)) {
+            return uniqueMorseRepresentations(lines.parallel());
+        }
+    }
 }
@@ -1,22 +1,58 @@
 package ascii_art;
 import image.Image;
+import stats.Stage;
+import stats.StageTimer;
+import stats.Stats;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.logging.Logger;
 
 /**
  * Main class. This class gets the given image and runs the Shell class if it opened. If it doesn't open or
- * there is no file in the argument, it prints an error message.
+ * there is no file in the argument, it prints an error message. An optional second argument is a number of worker
+ * processes to render with from the start; then only the header of the image file is read in this process, and
+ * the workers read the pixels. If the system property ascii_art.statsFile is set, the statistics of the run are
+ * written as JSON to that file on exit.
  */
 public class Driver {
+    private static final String STATS_FILE_PROPERTY = "ascii_art.statsFile";
+
+    @SuppressWarnings("try")
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("USAGE: java asciiArt ");
+        int numWorkers = 0;
+        if (args.length == 2) {
+            try {
+                numWorkers = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                numWorkers = -1;
+            }
+        }
+        if (args.length < 1 || args.length > 2 || numWorkers < 0) {
+            System.err.println("USAGE: java asciiArt <image> [workers]");
             return;
         }
-        Image img = Image.fromFile(args[0]);
+        Image img;
+        try (StageTimer timer = Stats.time(Stage.DECODE)) {
+            img = numWorkers > 0 ? Image.headerFromFile(args[0]) : Image.fromFile(args[0]);
+        }
         if (img == null) {
             Logger.getGlobal().severe("Failed to open image file " + args[0]);
             return;
         }
-        new Shell(img).run();
+        ShardedRenderer shardedRenderer = null;
+        if (numWorkers > 0) {
+            try {
+                shardedRenderer = ShardedRenderer.spawn(numWorkers);
+            } catch (IOException e) {
+                Logger.getGlobal().severe("Failed to start worker processes: " + e.getMessage());
+                return;
+            }
+        }
+        new Shell(img, args[0], shardedRenderer).run();
+        String statsFile = System.getProperty(STATS_FILE_PROPERTY);
+        if (statsFile != null)
+            Files.writeString(Paths.get(statsFile), Stats.toJson() + System.lineSeparator());
     }
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package ascii_art;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watches an image file and calls a callback after the file was written. Writes that come in a burst, less than
+ * the debounce delay apart, are coalesced into a single call after the burst ends, so a file that is being
+ * written in several chunks isn't handled half written. The watching runs on a daemon thread of its own.
+ */
+class ImageWatcher {
+    private static final long DEBOUNCE_MILLIS = 200;
+    private static final String WATCHER_THREAD_NAME = "watch";
+
+    private final Path file;
+    private final Runnable onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * Constructor. Starts watching right away.
+     * @param file path of the image file to watch.
+     * @param onChange called on the watching thread after every burst of writes to the file.
+     * @throws IOException if the file's directory can't be watched.
+     */
+    ImageWatcher(Path file, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.onChange = onChange;
+        watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::watch, WATCHER_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching. The callback isn't called after this returns, unless it is already running.
+     */
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            Logger.getGlobal().warning("Failed to stop watching " + file);
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                boolean changed = handleEvents(watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    changed |= handleEvents(key);
+                if (changed)
+                    onChange.run();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * @return whether any of the key's events is about the watched file.
+     */
+    private boolean handleEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context()))
+                changed = true;
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,125 @@
+package ascii_art;
+
+import java.util.BitSet;
+import java.util.HashSet;
+
+/**
+ * A set of the morse codes of words, used by Algorithms to count unique morse representations. Each code is
+ * kept bit-packed: a dot is a 0 bit, a dash is a 1 bit, and one more 1 bit is placed right after the last
+ * symbol to mark the code's length. Codes of up to 63 symbols fit in a single long and are stored in an open
+ * addressing hash set of primitive longs; longer codes are stored as BitSets. An instance isn't thread safe -
+ * for parallel counting, every thread fills its own instance and the instances are merged with addAll.
+ */
+class MorseCodeSet {
+    private static final String[] MORSE_CODES = {".-", "-...", "-.-.", "-..", ".", "..-.", "--.", "....", "..",
+            ".---", "-.-", ".-..", "--", "-.", "---", ".--.", "--.-", ".-.", "...", "-", "..-", "...-", ".--",
+            "-..-", "-.--", "--.."};
+    private static final int[] LETTER_BITS = new int[MORSE_CODES.length];
+    private static final int[] LETTER_LENGTHS = new int[MORSE_CODES.length];
+    private static final int MAX_PACKED_SYMBOLS = 63;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final long EMPTY = 0;
+
+    static {
+        for (int i = 0; i < MORSE_CODES.length; i++) {
+            for (char symbol : MORSE_CODES[i].toCharArray())
+                LETTER_BITS[i] = (LETTER_BITS[i] << 1) | (symbol == '-' ? 1 : 0);
+            LETTER_LENGTHS[i] = MORSE_CODES[i].length();
+        }
+    }
+
+    private long[] table = new long[INITIAL_CAPACITY];
+    private int packedSize = 0;
+    private final HashSet<BitSet> longCodes = new HashSet<>();
+    private final BitSet longCodeBuffer = new BitSet();
+
+    /**
+     * Adds the morse code of the given word.
+     * @param word a word of lowercase English letters.
+     * @throws IllegalArgumentException if the word has a char that isn't a lowercase English letter.
+     */
+    void add(CharSequence word) {
+        long code = 0;
+        int numSymbols = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int letter = word.charAt(i) - 'a';
+            if (letter < 0 || letter >= MORSE_CODES.length)
+                throw new IllegalArgumentException("Not a lowercase English letter: " + word.charAt(i));
+            numSymbols += LETTER_LENGTHS[letter];
+            if (numSymbols > MAX_PACKED_SYMBOLS) {
+                addLongCode(word);
+                return;
+            }
+            code = (code << LETTER_LENGTHS[letter]) | LETTER_BITS[letter];
+        }
+        addPacked(code | (1L << numSymbols));
+    }
+
+    /**
+     * Adds all the codes of the given set to this set.
+     */
+    void addAll(MorseCodeSet other) {
+        for (long code : other.table) {
+            if (code != EMPTY)
+                addPacked(code);
+        }
+        longCodes.addAll(other.longCodes);
+    }
+
+    int size() {
+        return packedSize + longCodes.size();
+    }
+
+    private void addPacked(long code) {
+        int mask = table.length - 1;
+        int idx = hash(code) & mask;
+        while (table[idx] != EMPTY) {
+            if (table[idx] == code)
+                return;
+            idx = (idx + 1) & mask;
+        }
+        table[idx] = code;
+        packedSize++;
+        if (2 * packedSize > table.length)
+            grow();
+    }
+
+    private void grow() {
+        long[] oldTable = table;
+        table = new long[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (long code : oldTable) {
+            if (code == EMPTY)
+                continue;
+            int idx = hash(code) & mask;
+            while (table[idx] != EMPTY)
+                idx = (idx + 1) & mask;
+            table[idx] = code;
+        }
+    }
+
+    private void addLongCode(CharSequence word) {
+        longCodeBuffer.clear();
+        int numSymbols = 0;
+        for (int i = 0; i < word.length(); i++) {
+            int letter = word.charAt(i) - 'a';
+            if (letter < 0 || letter >= MORSE_CODES.length)
+                throw new IllegalArgumentException("Not a lowercase English letter: " + word.charAt(i));
+            for (int bit = LETTER_LENGTHS[letter] - 1; bit >= 0; bit--) {
+                if (((LETTER_BITS[letter] >> bit) & 1) == 1)
+                    longCodeBuffer.set(numSymbols);
+                numSymbols++;
+            }
+        }
+        longCodeBuffer.set(numSymbols);
+        if (!longCodes.contains(longCodeBuffer))
+            longCodes.add((BitSet) longCodeBuffer.clone());
+    }
+
+    private static int hash(long code) {
+        code ^= code >>> 33;
+        code *= 0xff51afd7ed558ccdL;
+        code ^= code >>> 33;
+        return (int) code;
+    }
+}
@@ -0,0 +1,134 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessGrid;
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.DitherMode;
+import ascii_art.img_to_char.RenderProgress;
+import ascii_output.AsciiOutput;
+import image.Image;
+
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A set of renders of a single image, each of its own resolution, charset and output, that are done together.
+ * The brightness of the sub images is calculated from the image's pixels once, at the finest resolution of the
+ * plan, and the grid of every coarser resolution whose sub image size is a multiple of the finest one is derived
+ * from it by averaging blocks of sub images. The other resolutions are calculated from the pixels. Then every
+ * render is matched to its charset and written to its output, concurrently with the others. The plan has a matcher
+ * of its own, whose caches aren't thread safe, so it can run while the same image is rendered elsewhere.
+ */
+public class RenderPlan {
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final String RESOLUTION_MSG = "Resolution %d isn't between %d and %d and a divisor of the " +
+                                                 "image's width %d";
+
+    private final Image image;
+    private final BrightnessImgCharMatcher matcher;
+    private final List<Variant> variants = new ArrayList<>();
+
+    private static class Variant {
+        final int charsInRow;
+        final Character[] charSet;
+        final DitherMode ditherMode;
+        final AsciiOutput output;
+
+        Variant(int charsInRow, Character[] charSet, DitherMode ditherMode, AsciiOutput output) {
+            this.charsInRow = charsInRow;
+            this.charSet = charSet;
+            this.ditherMode = ditherMode;
+            this.output = output;
+        }
+    }
+
+    /**
+     * Constructor of an empty plan.
+     * @param image the image to render.
+     * @param fontName the font whose glyphs the chars are matched by.
+     */
+    public RenderPlan(Image image, String fontName) {
+        this.image = image;
+        matcher = new BrightnessImgCharMatcher(image, fontName);
+    }
+
+    /**
+     * Adds a render to the plan.
+     * @param charsInRow the resolution - number of chars in a row.
+     * @param charSet the chars to use in the art.
+     * @param ditherMode error-diffusion kernel to use, or NONE for plain nearest brightness matching.
+     * @param output where to write the art. Renders run concurrently, so outputs of different renders
+     *               shouldn't write to the same destination.
+     * @return this plan.
+     * @throws IllegalArgumentException if the resolution isn't one the shell allows: a divisor of the image's
+     * width, so the sub images cover whole rows, from max(1, width / height), so a sub image isn't taller than
+     * the image, to width / 2.
+     */
+    public RenderPlan add(int charsInRow, Character[] charSet, DitherMode ditherMode, AsciiOutput output) {
+        int minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
+        int maxCharsInRow = image.getWidth() / MIN_PIXELS_PER_CHAR;
+        if (charsInRow < minCharsInRow || charsInRow > maxCharsInRow || image.getWidth() % charsInRow != 0)
+            throw new IllegalArgumentException(String.format(RESOLUTION_MSG, charsInRow, minCharsInRow,
+                    maxCharsInRow, image.getWidth()));
+        variants.add(new Variant(charsInRow, charSet.clone(), ditherMode, output));
+        return this;
+    }
+
+    /**
+     * Adds a render without dithering to the plan.
+     * @see #add(int, Character[], DitherMode, AsciiOutput)
+     */
+    public RenderPlan add(int charsInRow, Character[] charSet, AsciiOutput output) {
+        return add(charsInRow, charSet, DitherMode.NONE, output);
+    }
+
+    /**
+     * Does all the renders of the plan, and returns after all of them were written.
+     * @param executor runs the matching and output of the renders.
+     * @param progress updated while calculating brightness from the image's pixels, and checked for cancellation.
+     * @throws CancellationException if the progress was cancelled before the brightness was calculated.
+     * @throws RuntimeException the first exception thrown by a render's matching or output, if any.
+     */
+    public void render(Executor executor, RenderProgress progress) {
+        Map<Integer, BrightnessGrid> grids = brightnessGrids(progress);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Variant variant : variants) {
+            BrightnessGrid grid = grids.get(image.getWidth() / variant.charsInRow);
+            futures.add(CompletableFuture.runAsync(() -> variant.output.output(
+                    matcher.chooseChars(grid, variant.charSet, variant.ditherMode)), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Calculates the brightness grid of every sub image size of the plan, from the finest one when possible.
+     * @return the grids, by sub image size.
+     */
+    private Map<Integer, BrightnessGrid> brightnessGrids(RenderProgress progress) {
+        TreeMap<Integer, Integer> charsInRowBySize = new TreeMap<>();
+        for (Variant variant : variants)
+            charsInRowBySize.putIfAbsent(image.getWidth() / variant.charsInRow, variant.charsInRow);
+        Map<Integer, BrightnessGrid> grids = new HashMap<>();
+        if (charsInRowBySize.isEmpty())
+            return grids;
+        BrightnessGrid finest = matcher.brightnessGrid(charsInRowBySize.firstEntry().getValue(), progress);
+        for (Map.Entry<Integer, Integer> entry : charsInRowBySize.entrySet()) {
+            int pixels = entry.getKey();
+            if (pixels == finest.getPixels())
+                grids.put(pixels, finest);
+            else if (pixels % finest.getPixels() == 0)
+                grids.put(pixels, finest.downsample(pixels / finest.getPixels()));
+            else
+                grids.put(pixels, matcher.brightnessGrid(entry.getValue(), progress));
+        }
+        return grids;
+    }
+}
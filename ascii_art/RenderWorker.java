@@ -0,0 +1,76 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessGrid;
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.RenderProgress;
+import image.Image;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Main class of a worker process of sharded rendering. Listens on a free local port, prints the port to the standard
+ * output, and serves a single coordinator: for every request it opens a horizontal stripe of an image file and
+ * returns the brightness of the stripe's sub images. Exits when the coordinator disconnects.
+ * Protocol, over data streams - request: image path (UTF), first row of the stripe, number of rows in the
+ * stripe and sub image size in pixels (ints); response: number of sub images (int, or -1 followed by an error
+ * message in UTF if the stripe couldn't be opened or calculated) followed by their brightness (floats), row
+ * after row.
+ */
+public class RenderWorker {
+    private static final String FONT_NAME = "Courier New";
+
+    public static void main(String[] args) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            System.out.println(serverSocket.getLocalPort());
+            System.out.flush();
+            try (Socket socket = serverSocket.accept();
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                while (true) {
+                    String imagePath;
+                    try {
+                        imagePath = in.readUTF();
+                    } catch (EOFException e) {
+                        return;
+                    }
+                    serve(imagePath, in.readInt(), in.readInt(), in.readInt(), out);
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers a single request. A failure to open or calculate the stripe is sent to the coordinator as an
+     * error, and the worker goes on serving.
+     */
+    private static void serve(String imagePath, int startY, int height, int pixels, DataOutputStream out)
+            throws IOException {
+        BrightnessGrid grid;
+        try {
+            Image stripe = Image.stripeFromFile(imagePath, startY, height);
+            if (stripe == null) {
+                writeError(out, "Failed to open image file " + imagePath);
+                return;
+            }
+            grid = new BrightnessImgCharMatcher(stripe, FONT_NAME)
+                    .brightnessGrid(stripe.getWidth() / pixels, new RenderProgress());
+        } catch (RuntimeException e) { //the file may have shrunk, or be written only partly
+            writeError(out, "Failed to render a stripe of " + imagePath + ": " + e);
+            return;
+        }
+        out.writeInt(grid.getNumRows() * grid.getNumCols());
+        for (int row = 0; row < grid.getNumRows(); row++) {
+            for (int col = 0; col < grid.getNumCols(); col++)
+                out.writeFloat(grid.get(row, col));
+        }
+    }
+
+    private static void writeError(DataOutputStream out, String message) throws IOException {
+        out.writeInt(-1);
+        out.writeUTF(message);
+    }
+}
@@ -0,0 +1,176 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessGrid;
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.DitherMode;
+import ascii_art.img_to_char.RenderProgress;
+import image.Image;
+import stats.Stats;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * Chooses the largest resolution that meets a time budget or an output size budget. The time of a render is
+ * predicted by a linear cost model: a cost per pixel of the image, for going over the pixels, a cost per sub
+ * image, for creating and caching it, a cost per sub image per char in the charset, for matching, and a cost per
+ * char in the charset, for rendering the char's glyph. The costs are calibrated once per process, by timing
+ * renders of a synthetic image on the current machine. The calibration renders aren't recorded in the stats.
+ */
+public class ResolutionPlanner {
+    private static final int CALIBRATION_IMAGE_SIZE = 512;
+    private static final int COARSE_PIXELS = 64;
+    private static final int FINE_PIXELS = 2;
+    private static final int CALIBRATION_RUNS = 3;
+    private static final Character[] CALIBRATION_CHARS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+    private static final String FONT_NAME = "Courier New";
+
+    private static ResolutionPlanner calibrated;
+
+    private final double nanosPerPixel;
+    private final double nanosPerTile;
+    private final double nanosPerTilePerChar;
+    private final double nanosPerChar;
+
+    /**
+     * Constructor.
+     * @param nanosPerPixel cost of going over a single pixel of the image.
+     * @param nanosPerTile cost of a single sub image, beside going over its pixels and matching it.
+     * @param nanosPerTilePerChar cost of comparing a single sub image to a single char of the charset.
+     * @param nanosPerChar cost of rendering the glyph of a single char of the charset.
+     */
+    public ResolutionPlanner(double nanosPerPixel, double nanosPerTile, double nanosPerTilePerChar,
+                             double nanosPerChar) {
+        this.nanosPerPixel = nanosPerPixel;
+        this.nanosPerTile = nanosPerTile;
+        this.nanosPerTilePerChar = nanosPerTilePerChar;
+        this.nanosPerChar = nanosPerChar;
+    }
+
+    /**
+     * Returns a planner whose costs were measured on the current machine. The first call measures them, which
+     * takes about a second, so it is better made ahead of time on a background thread; calls made meanwhile wait
+     * for it, and the following calls return the same planner.
+     */
+    public static synchronized ResolutionPlanner calibrated() {
+        if (calibrated == null)
+            calibrated = Stats.untracked(ResolutionPlanner::calibrate);
+        return calibrated;
+    }
+
+    /**
+     * Times the brightness calculation of a synthetic image at a coarse and at a fine sub image size, to separate
+     * the cost per pixel from the cost per sub image, and times matching a single sub image and matching all the
+     * sub images of the fine size, to separate the cost of rendering the glyphs from the cost of matching.
+     */
+    private static ResolutionPlanner calibrate() {
+        Image image = syntheticImage();
+        int numPixels = CALIBRATION_IMAGE_SIZE * CALIBRATION_IMAGE_SIZE;
+        int coarseTiles = numPixels / (COARSE_PIXELS * COARSE_PIXELS);
+        int fineTiles = numPixels / (FINE_PIXELS * FINE_PIXELS);
+        long coarseNanos = Long.MAX_VALUE;
+        long fineNanos = Long.MAX_VALUE;
+        long matchNanos = Long.MAX_VALUE;
+        long glyphNanos = Long.MAX_VALUE;
+        BrightnessGrid singleTile = new BrightnessGrid(1, 1, CALIBRATION_IMAGE_SIZE);
+        for (int run = 0; run < CALIBRATION_RUNS; run++) {
+            coarseNanos = Math.min(coarseNanos, timeBrightness(image, COARSE_PIXELS));
+            BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, FONT_NAME);
+            long start = System.nanoTime();
+            BrightnessGrid grid = matcher.brightnessGrid(CALIBRATION_IMAGE_SIZE / FINE_PIXELS, new RenderProgress());
+            fineNanos = Math.min(fineNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            matcher.chooseChars(singleTile, CALIBRATION_CHARS, DitherMode.NONE);
+            glyphNanos = Math.min(glyphNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            matcher.chooseChars(grid, CALIBRATION_CHARS, DitherMode.NONE);
+            matchNanos = Math.min(matchNanos, System.nanoTime() - start);
+        }
+        double nanosPerTile = Math.max(0, (double) (fineNanos - coarseNanos) / (fineTiles - coarseTiles));
+        double nanosPerPixel = Math.max(0, (coarseNanos - coarseTiles * nanosPerTile) / numPixels);
+        double nanosPerTilePerChar = Math.max(0, (double) (matchNanos - glyphNanos) / fineTiles /
+                                                 CALIBRATION_CHARS.length);
+        double nanosPerChar = (double) glyphNanos / CALIBRATION_CHARS.length;
+        return new ResolutionPlanner(nanosPerPixel, nanosPerTile, nanosPerTilePerChar, nanosPerChar);
+    }
+
+    private static long timeBrightness(Image image, int pixels) {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(image, FONT_NAME);
+        long start = System.nanoTime();
+        matcher.brightnessGrid(CALIBRATION_IMAGE_SIZE / pixels, new RenderProgress());
+        return System.nanoTime() - start;
+    }
+
+    private static Image syntheticImage() {
+        Random random = new Random(0);
+        Color[][] pixels = new Color[CALIBRATION_IMAGE_SIZE][CALIBRATION_IMAGE_SIZE];
+        for (Color[] row : pixels) {
+            for (int x = 0; x < row.length; x++)
+                row[x] = new Color(random.nextInt(0x1000000));
+        }
+        return new Image() {
+            @Override
+            public Color getPixel(int x, int y) {
+                return pixels[y][x];
+            }
+
+            @Override
+            public int getWidth() {
+                return CALIBRATION_IMAGE_SIZE;
+            }
+
+            @Override
+            public int getHeight() {
+                return CALIBRATION_IMAGE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Predicts how long rendering the given image at the given resolution takes, when nothing is cached.
+     * @param image the image to render.
+     * @param charsInRow the resolution - number of chars in a row.
+     * @param charSetSize number of chars in the charset.
+     * @return the predicted time, in nanoseconds.
+     */
+    public long predictNanos(Image image, int charsInRow, int charSetSize) {
+        long numTiles = numTiles(image, charsInRow);
+        return (long) ((double) image.getWidth() * image.getHeight() * nanosPerPixel +
+                       numTiles * (nanosPerTile + charSetSize * nanosPerTilePerChar) +
+                       charSetSize * nanosPerChar);
+    }
+
+    /**
+     * Finds the largest resolution, among minCharsInRow multiplied by powers of 2 up to maxCharsInRow, whose
+     * render is predicted to take at most the given time.
+     * @return the largest resolution within the budget, or minCharsInRow if none is.
+     */
+    public int largestWithinTime(Image image, int minCharsInRow, int maxCharsInRow, int charSetSize,
+                                 long budgetNanos) {
+        int best = minCharsInRow;
+        for (int charsInRow = minCharsInRow; charsInRow <= maxCharsInRow; charsInRow *= 2) {
+            if (predictNanos(image, charsInRow, charSetSize) <= budgetNanos)
+                best = charsInRow;
+        }
+        return best;
+    }
+
+    /**
+     * Finds the largest resolution, among minCharsInRow multiplied by powers of 2 up to maxCharsInRow, whose
+     * output has at most the given number of chars.
+     * @return the largest resolution within the budget, or minCharsInRow if none is.
+     */
+    public static int largestWithinSize(Image image, int minCharsInRow, int maxCharsInRow, long maxChars) {
+        int best = minCharsInRow;
+        for (int charsInRow = minCharsInRow; charsInRow <= maxCharsInRow; charsInRow *= 2) {
+            if (numTiles(image, charsInRow) <= maxChars)
+                best = charsInRow;
+        }
+        return best;
+    }
+
+    private static long numTiles(Image image, int charsInRow) {
+        int pixels = image.getWidth() / charsInRow;
+        return (long) (image.getWidth() / pixels) * (image.getHeight() / pixels);
+    }
+}
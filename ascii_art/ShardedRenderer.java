@@ -0,0 +1,216 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessGrid;
+import ascii_art.img_to_char.RenderProgress;
+import image.Image;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * The coordinator of sharded rendering. Splits an image into horizontal stripes aligned to the sub image size,
+ * sends the stripes to RenderWorker processes over local sockets, and merges the brightness of their sub images,
+ * in order, into a single brightness grid. Every worker opens only its stripes of the image file, and the
+ * coordinator needs only the image's dimensions, which Image.headerFromFile reads without decoding the image, so
+ * no process's heap holds the whole image. The merged grid is identical to the one calculated in a single
+ * process.
+ */
+class ShardedRenderer implements AutoCloseable {
+    private static final int STRIPES_PER_WORKER = 4;
+    private static final String WORKER_THREAD_NAME = "shard";
+
+    private final List<Process> processes = new ArrayList<>();
+    private final List<WorkerConnection> workers = new ArrayList<>();
+    private final ExecutorService executor;
+
+    private static class WorkerConnection implements Closeable {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        WorkerConnection(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private ShardedRenderer(List<InetSocketAddress> addresses, List<Process> processes) throws IOException {
+        this.processes.addAll(processes);
+        executor = Executors.newFixedThreadPool(addresses.size(), runnable -> {
+            Thread thread = new Thread(runnable, WORKER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (InetSocketAddress address : addresses)
+                workers.add(new WorkerConnection(address));
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the given number of worker processes on this machine, with the same java executable and class
+     * path as this process, and connects to them.
+     * @param numWorkers number of worker processes to start.
+     * @return a coordinator of the started workers, which stops them when closed.
+     * @throws IOException if starting or connecting to one of the workers failed.
+     */
+    static ShardedRenderer spawn(int numWorkers) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i < numWorkers; i++) {
+                Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        RenderWorker.class.getName())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                processes.add(process);
+                String port = new BufferedReader(new InputStreamReader(
+                        process.getInputStream(), StandardCharsets.UTF_8)).readLine();
+                if (port == null)
+                    throw new IOException("Worker process exited before listening");
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port.trim())));
+            }
+        } catch (IOException | NumberFormatException e) {
+            processes.forEach(Process::destroy);
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+        return new ShardedRenderer(addresses, processes);
+    }
+
+    /**
+     * Calculates the average brightness of every sub image of the given image, using the workers.
+     * @param imagePath path of the image file that image was opened from; the workers open it themselves.
+     * @param image the image, used only for its dimensions.
+     * @param numCharsInRow resolution of the picture - number of ASCII chars in each row and column.
+     * @param progress updated after every stripe, and checked for cancellation before every stripe.
+     * @return the brightness of every sub image.
+     * @throws IOException if a worker failed, or all the workers disconnected.
+     * @throws CancellationException if the progress was cancelled before all stripes were calculated.
+     */
+    BrightnessGrid brightnessGrid(String imagePath, Image image, int numCharsInRow, RenderProgress progress)
+            throws IOException {
+        List<WorkerConnection> connected = new ArrayList<>();
+        for (WorkerConnection worker : workers) {
+            if (!worker.socket.isClosed())
+                connected.add(worker);
+        }
+        if (connected.isEmpty())
+            throw new IOException("All worker processes disconnected");
+        int pixels = image.getWidth() / numCharsInRow;
+        BrightnessGrid grid = new BrightnessGrid(image.getHeight() / pixels, image.getWidth() / pixels, pixels);
+        progress.start(grid.getNumRows() * grid.getNumCols());
+        int rowsPerStripe = Math.max(1,
+                -Math.floorDiv(-grid.getNumRows(), connected.size() * STRIPES_PER_WORKER));
+        Queue<Integer> stripes = new ConcurrentLinkedQueue<>();
+        for (int row = 0; row < grid.getNumRows(); row += rowsPerStripe)
+            stripes.add(row);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (WorkerConnection worker : connected) {
+            futures.add(executor.submit(() -> {
+                Integer firstRow;
+                while ((firstRow = stripes.poll()) != null && !progress.isCancelled()) {
+                    int numRows = Math.min(rowsPerStripe, grid.getNumRows() - firstRow);
+                    try {
+                        renderStripe(worker, imagePath, grid, firstRow, numRows);
+                    } catch (IOException e) {
+                        stripes.clear();
+                        throw e;
+                    }
+                    progress.tilesDone(numRows * grid.getNumCols());
+                }
+                return null;
+            }));
+        }
+        // waits for all the workers, even after one failed, so none is still answering when the next render
+        // sends it a request
+        IOException failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (failure == null)
+                    failure = e.getCause() instanceof IOException ?
+                            (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+        if (failure != null)
+            throw failure;
+        if (progress.isCancelled())
+            throw new CancellationException();
+        return grid;
+    }
+
+    /**
+     * Sends one stripe to the given worker and copies the brightness of its sub images into the grid. When the
+     * worker reports an error, or returns a different number of sub images than the stripe has, the rest of
+     * its response is still read, so the connection stays in step for the next request. When the connection
+     * fails in the middle of a response, it is closed and the worker isn't used again.
+     * @throws IOException if the worker reported an error, returned a wrong number of sub images, or
+     * disconnected.
+     */
+    private static void renderStripe(WorkerConnection worker, String imagePath, BrightnessGrid grid,
+                                     int firstRow, int numRows) throws IOException {
+        String error;
+        try {
+            worker.out.writeUTF(imagePath);
+            worker.out.writeInt(firstRow * grid.getPixels());
+            worker.out.writeInt(numRows * grid.getPixels());
+            worker.out.writeInt(grid.getPixels());
+            worker.out.flush();
+            int numTiles = worker.in.readInt();
+            if (numTiles < 0)
+                error = worker.in.readUTF();
+            else if (numTiles != numRows * grid.getNumCols()) {
+                worker.in.skipNBytes((long) numTiles * Float.BYTES);
+                error = "Worker returned " + numTiles + " sub images instead of " + numRows * grid.getNumCols();
+            }
+            else {
+                for (int row = firstRow; row < firstRow + numRows; row++) {
+                    for (int col = 0; col < grid.getNumCols(); col++)
+                        grid.set(row, col, worker.in.readFloat());
+                }
+                return;
+            }
+        } catch (IOException e) {
+            worker.close();
+            throw e;
+        }
+        throw new IOException(error);
+    }
+
+    /**
+     * Disconnects from the workers and stops the worker processes this coordinator started.
+     */
+    @Override
+    public void close() {
+        for (WorkerConnection worker : workers) {
+            try {
+                worker.close();
+            } catch (IOException ignored) {
+            }
+        }
+        executor.shutdownNow();
+        processes.forEach(Process::destroy);
+    }
+}
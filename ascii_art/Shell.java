@@ -1,12 +1,23 @@
 package ascii_art;
 
+import ascii_art.img_to_char.BrightnessGrid;
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.DitherMode;
+import ascii_art.img_to_char.RenderProgress;
 import ascii_output.AsciiOutput;
+import ascii_output.CharGrid;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
 import image.Image;
+import stats.Stage;
+import stats.StageTimer;
+import stats.Stats;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
 import static java.lang.Math.max;
@@ -15,7 +26,7 @@ import static java.lang.Math.min;
 /**
  * The class that extends the ASCII art optionality. It provides functionality for: adding, removing, rendering,
  * showing all characters in the run, choosing to render to the console, increasing and decreasing the
- * resolution.
+ * resolution, and watching the image file to render it again whenever it changes.
  */
 public class Shell {
     private static final String CMD_EXIT = "exit";
@@ -25,8 +36,22 @@ public class Shell {
     private static final String RES = "res";
     private static final String CONSOLE = "console";
     private static final String RENDER = "render";
+    private static final String PROGRESS = "progress";
+    private static final String CANCEL = "cancel";
+    private static final String STATS = "stats";
+    private static final String STATS_JSON = "json";
+    private static final String STATS_RESET = "reset";
+    private static final String WATCH = "watch";
+    private static final String UNWATCH = "unwatch";
+    private static final String SHARDS = "shards";
     private static final String UP = "up";
     private static final String DOWN = "down";
+    private static final String TIME_BUDGET = "time";
+    private static final String SIZE_BUDGET = "size";
+    private static final String DITHER = "dither";
+    private static final String DITHER_NONE = "none";
+    private static final String DITHER_FLOYD_STEINBERG = "fs";
+    private static final String DITHER_ATKINSON = "atkinson";
     private static final String INVALID_INPUT = "Invalid input";
     private static final String TAB = ">>> ";
     private static final String SPACE = "space";
@@ -34,6 +59,23 @@ public class Shell {
     private static final String WIDTH_INDICATOR = "Width set to %d\n";
     private static final String MAX_RES_MSG = "You're using the maximal resolution";
     private static final String MIN_RES_MSG = "You're using the minimal resolution";
+    private static final String PREDICTED_TIME_INDICATOR = "Predicted render time %dms\n";
+    private static final String DITHER_INDICATOR = "Dithering set to %s\n";
+    private static final String PROGRESS_INDICATOR = "Rendered %d/%d tiles, %d renders queued\n";
+    private static final String NO_RENDER_MSG = "No render is running";
+    private static final String RENDER_CANCELLED_MSG = "Render cancelled\n";
+    private static final String RENDER_THREAD_NAME = "render";
+    private static final String PRECOMPUTE_THREAD_NAME = "precompute";
+    private static final String WATCHING_MSG = "Watching %s\n";
+    private static final String NOT_WATCHING_MSG = "Not watching";
+    private static final String ALREADY_WATCHING_MSG = "Already watching";
+    private static final String NO_FILE_MSG = "No image file to watch";
+    private static final String WATCH_FAILED_MSG = "Failed to watch %s\n";
+    private static final String SHARDS_INDICATOR = "Rendering with %d worker processes\n";
+    private static final String SHARDS_FAILED_MSG = "Failed to start worker processes: %s\n";
+    private static final String OPEN_FAILED_MSG = "Failed to open image file %s\n";
+    private static final String SHARDED_RENDER_FAILED_MSG = "Sharded render failed: %s\n";
+    private static final String WORKER_STATS_MSG = "Worker processes' stages and counters aren't included";
     private static final int INITIAL_CHARS_IN_ROW = 64;
     private static final int MIN_PIXELS_PER_CHAR = 2;
     private static final String FONT_NAME = "Courier New";
@@ -42,13 +84,36 @@ public class Shell {
     private static final int FIRST_ASCII_CHAR = 32;
     private static final int LAST_ASCII_CHAR = 126;
 
-    private Image img;
+    private volatile Image img;
+    private final String imagePath;
     private Set<Character> charSet = new HashSet<>();
-    private final int minCharsInRow;
-    private final int maxCharsInRow;
+    private volatile int minCharsInRow;
+    private volatile int maxCharsInRow;
     private int charsInRow;
-    private BrightnessImgCharMatcher charMatcher;
+    private DitherMode ditherMode = DitherMode.NONE;
+    private volatile BrightnessImgCharMatcher charMatcher;
     private AsciiOutput output;
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, RENDER_THREAD_NAME);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Queue<RenderProgress> renders = new ConcurrentLinkedQueue<>();
+    private final ExecutorService precomputeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, PRECOMPUTE_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Queue<RenderProgress> precomputes = new ConcurrentLinkedQueue<>();
+    private ImageWatcher watcher;
+    private final AtomicBoolean watchRenderPending = new AtomicBoolean();
+    // the result of the last watch render, used only on the render thread
+    private BrightnessGrid lastWatchGrid;
+    private CharGrid lastWatchChars;
+    // the coordinator of the worker processes, or null to render in this process; changed only on the render
+    // thread. While it is set, img holds only the image's dimensions and charMatcher is used only for matching
+    private volatile ShardedRenderer shardedRenderer;
 
     /**
      * Constructor. Initializes the minimum and maximum resolution, the algorithm that calculates the
@@ -56,18 +121,48 @@ public class Shell {
      * @param img
      */
     public Shell(Image img) {
+        this(img, null);
+    }
+
+    /**
+     * Constructor. Same as Shell(img), but also allows watching the image's file.
+     * @param img the image, opened from imagePath.
+     * @param imagePath path of the image file on disk.
+     */
+    public Shell(Image img, String imagePath) {
+        this(img, imagePath, null);
+    }
+
+    /**
+     * Constructor. Same as Shell(img, imagePath), but renders with the given worker processes from the start,
+     * as after the shards command. Unless shardedRenderer is null, only the dimensions of img are used, so it
+     * can be opened with Image.headerFromFile, and the image is never decoded in this process.
+     * @param img the image, or its header, opened from imagePath.
+     * @param imagePath path of the image file on disk.
+     * @param shardedRenderer the coordinator of the worker processes, or null to render in this process.
+     */
+    Shell(Image img, String imagePath, ShardedRenderer shardedRenderer) {
         this.img = img;
+        this.imagePath = imagePath;
+        this.shardedRenderer = shardedRenderer;
         minCharsInRow = max(1, img.getWidth()/img.getHeight());
         maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
         charsInRow = max(min(INITIAL_CHARS_IN_ROW, maxCharsInRow), minCharsInRow);
         charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
         output = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
         addChars(INITIAL_CHARS_RANGE);
+        // calibrates res time's cost model ahead of time, off the prompt and before any precomputation competes
+        // with its timing
+        precomputeExecutor.execute(ResolutionPlanner::calibrated);
+        schedulePrecompute(charsInRow);
     }
 
     /**
      * Runs the extension. prints '>>> ' and expects for one of the inputs: exit, add, remove, chars, res up, res down,
-     * console, render. It runs until the user typed exit. It informs the user for invalid input.
+     * res time, res size, dither, console, render, progress, cancel, stats, watch, unwatch, shards. It runs until
+     * the user typed exit. It informs the user for invalid input. Renders run in the background one after the
+     * other, so the prompt stays responsive while rendering. On exit, waits for the renders that weren't
+     * cancelled to finish.
      */
     public void run() {
         Scanner scanner = new Scanner(System.in);
@@ -106,12 +201,23 @@ public class Shell {
                         removeChars(splitInput[1]);
                         break;
                     case RES:
+                        if (splitInput.length == 3) {
+                            resBudget(splitInput[1], splitInput[2]);
+                            break;
+                        }
                         if (splitInput.length != 2) {
                             System.out.println(INVALID_INPUT);
                             break;
                         }
                         resChange(splitInput[1]);
                         break;
+                    case DITHER:
+                        if (splitInput.length != 2) {
+                            System.out.println(INVALID_INPUT);
+                            break;
+                        }
+                        ditherChange(splitInput[1]);
+                        break;
                     case CONSOLE:
                         if (splitInput.length != 1) {
                             System.out.println(INVALID_INPUT);
@@ -127,6 +233,49 @@ public class Shell {
                         render();
                         output = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
                         break;
+                    case PROGRESS:
+                        if (splitInput.length != 1) {
+                            System.out.println(INVALID_INPUT);
+                            break;
+                        }
+                        showProgress();
+                        break;
+                    case CANCEL:
+                        if (splitInput.length != 1) {
+                            System.out.println(INVALID_INPUT);
+                            break;
+                        }
+                        cancelRenders();
+                        break;
+                    case STATS:
+                        if (splitInput.length > 2) {
+                            System.out.println(INVALID_INPUT);
+                            break;
+                        }
+                        showStats(splitInput.length == 1 ? null : splitInput[1]);
+                        break;
+                    case WATCH:
+                        if (splitInput.length != 1) {
+                            System.out.println(INVALID_INPUT);
+                            break;
+                        }
+                        startWatch();
+                        output = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
+                        break;
+                    case UNWATCH:
+                        if (splitInput.length != 1) {
+                            System.out.println(INVALID_INPUT);
+                            break;
+                        }
+                        stopWatch();
+                        break;
+                    case SHARDS:
+                        if (splitInput.length != 2) {
+                            System.out.println(INVALID_INPUT);
+                            break;
+                        }
+                        shardsChange(splitInput[1]);
+                        break;
                     default:
                         System.out.println(INVALID_INPUT);
                         break;
@@ -134,9 +283,26 @@ public class Shell {
             }
             else
                 System.out.println(INVALID_INPUT);
+            // what the command printed, and the next command the user types, may scroll a grid that a watch
+            // render drew on the console
+            ConsoleAsciiOutput.textPrinted();
             System.out.print(TAB);
             cmd = scanner.nextLine();
+            ConsoleAsciiOutput.textPrinted();
+        }
+        if (watcher != null)
+            watcher.stop();
+        precomputes.forEach(RenderProgress::cancel);
+        renderExecutor.shutdown();
+        try {
+            renderExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        precomputes.forEach(RenderProgress::cancel);
+        precomputeExecutor.shutdownNow();
+        if (shardedRenderer != null)
+            shardedRenderer.close();
     }
 
     /**
@@ -210,6 +376,7 @@ public class Shell {
             if (charsInRow * MIN_PIXELS_PER_CHAR <= maxCharsInRow) {
                 charsInRow *= MIN_PIXELS_PER_CHAR;
                 System.out.printf(WIDTH_INDICATOR, charsInRow);
+                schedulePrecompute(charsInRow);
             }
 
             else
@@ -219,6 +386,7 @@ public class Shell {
             if (minCharsInRow <= charsInRow / MIN_PIXELS_PER_CHAR) {
                 charsInRow /= MIN_PIXELS_PER_CHAR;
                 System.out.printf(WIDTH_INDICATOR, charsInRow);
+                schedulePrecompute(charsInRow);
             }
             else
                 System.out.println(MIN_RES_MSG);
@@ -228,9 +396,141 @@ public class Shell {
         }
     }
 
+    /**
+     * Sets the largest resolution that meets the given budget: with time, the largest whose render is predicted,
+     * by a cost model calibrated on this machine, to take at most the given number of milliseconds; with size,
+     * the largest whose output has at most the given number of chars.
+     * @param kind time or size.
+     * @param budget string that represents the budget - milliseconds or number of chars.
+     */
+    private void resBudget(String kind, String budget) {
+        long budgetValue;
+        try {
+            budgetValue = Long.parseLong(budget);
+        } catch (NumberFormatException e) {
+            budgetValue = -1;
+        }
+        if (budgetValue < 0 || !(kind.equals(TIME_BUDGET) || kind.equals(SIZE_BUDGET))) {
+            System.out.println(INVALID_INPUT);
+            return;
+        }
+        if (kind.equals(TIME_BUDGET)) {
+            ResolutionPlanner planner = ResolutionPlanner.calibrated();
+            charsInRow = planner.largestWithinTime(img, minCharsInRow, maxCharsInRow, charSet.size(),
+                    TimeUnit.MILLISECONDS.toNanos(budgetValue));
+            System.out.printf(WIDTH_INDICATOR, charsInRow);
+            System.out.printf(PREDICTED_TIME_INDICATOR, TimeUnit.NANOSECONDS.toMillis(
+                    planner.predictNanos(img, charsInRow, charSet.size())));
+        }
+        else {
+            charsInRow = ResolutionPlanner.largestWithinSize(img, minCharsInRow, maxCharsInRow, budgetValue);
+            System.out.printf(WIDTH_INDICATOR, charsInRow);
+        }
+        schedulePrecompute(charsInRow);
+    }
+
+    /**
+     * Sets the error-diffusion dithering used when rendering: none, fs (Floyd-Steinberg) or atkinson.
+     * @param s string that represents the dithering mode to use.
+     */
+    private void ditherChange(String s) {
+        switch (s) {
+            case DITHER_NONE:
+                ditherMode = DitherMode.NONE;
+                break;
+            case DITHER_FLOYD_STEINBERG:
+                ditherMode = DitherMode.FLOYD_STEINBERG;
+                break;
+            case DITHER_ATKINSON:
+                ditherMode = DitherMode.ATKINSON;
+                break;
+            default:
+                System.out.println(INVALID_INPUT);
+                return;
+        }
+        System.out.printf(DITHER_INDICATOR, s);
+    }
+
+    /**
+     * Calculates in the background the brightness grids of the given resolution and of the resolutions that
+     * res up and res down would move to, so the next render doesn't need to go over the image's pixels.
+     * Precomputing only runs while no render is running or waiting, and stops when a render is requested. It
+     * doesn't run while rendering with worker processes, which go over the pixels themselves.
+     * @param centerCharsInRow the resolution that is currently chosen.
+     */
+    private void schedulePrecompute(int centerCharsInRow) {
+        precomputes.forEach(RenderProgress::cancel);
+        if (shardedRenderer != null)
+            return;
+        List<Integer> resolutions = new ArrayList<>();
+        resolutions.add(centerCharsInRow);
+        if (centerCharsInRow * MIN_PIXELS_PER_CHAR <= maxCharsInRow)
+            resolutions.add(centerCharsInRow * MIN_PIXELS_PER_CHAR);
+        if (minCharsInRow <= centerCharsInRow / MIN_PIXELS_PER_CHAR)
+            resolutions.add(centerCharsInRow / MIN_PIXELS_PER_CHAR);
+        for (int resolution : resolutions) {
+            RenderProgress progress = new RenderProgress();
+            precomputes.add(progress);
+            precomputeExecutor.execute(() -> {
+                try {
+                    if (!progress.isCancelled() && renders.isEmpty() && shardedRenderer == null)
+                        charMatcher.precompute(resolution, progress);
+                } catch (CancellationException ignored) {
+                } finally {
+                    precomputes.remove(progress);
+                }
+            });
+        }
+    }
+
+    /**
+     * Shows how many tiles the running render already matched, and how many renders are waiting after it.
+     */
+    private void showProgress() {
+        RenderProgress running = renders.peek();
+        if (running == null) {
+            System.out.println(NO_RENDER_MSG);
+            return;
+        }
+        System.out.printf(PROGRESS_INDICATOR, running.getTilesDone(), running.getTotalTiles(), renders.size() - 1);
+    }
+
+    /**
+     * Cancels the running render and all the renders that are waiting after it.
+     */
+    private void cancelRenders() {
+        if (renders.isEmpty()) {
+            System.out.println(NO_RENDER_MSG);
+            return;
+        }
+        renders.forEach(RenderProgress::cancel);
+    }
+
+    /**
+     * Shows the time, counts and allocations of every stage of rendering since the start of the run or the last
+     * reset. With no parameter, shows them as a table; with json, as a single JSON line; with reset, zeroes them.
+     * Only this process's work is measured, so when rendering in shards, the brightness of the sub images isn't.
+     * @param s null, json or reset.
+     */
+    private void showStats(String s) {
+        if (s == null) {
+            System.out.print(Stats.format());
+            if (shardedRenderer != null)
+                System.out.println(WORKER_STATS_MSG);
+        }
+        else if (s.equals(STATS_JSON))
+            System.out.println(Stats.toJson());
+        else if (s.equals(STATS_RESET))
+            Stats.reset();
+        else
+            System.out.println(INVALID_INPUT);
+    }
+
     /**
      * Renders the input by the provided render classe: by html or to the console.
      * The default is to th html, but if the user typed "console" it can also render to the console.
+     * The render runs in the background with the settings at the time of the call, after the renders that
+     * were requested before it.
      */
     private void render() {
         if (charSet.size() == 0)
@@ -241,6 +541,323 @@ public class Shell {
             charList[i] = character;
             i++;
         }
-        output.output(charMatcher.chooseChars(charsInRow, charList));
+        AsciiOutput renderOutput = output;
+        int renderCharsInRow = max(min(charsInRow, maxCharsInRow), minCharsInRow);
+        DitherMode renderDitherMode = ditherMode;
+        RenderProgress progress = new RenderProgress();
+        renders.add(progress);
+        precomputes.forEach(RenderProgress::cancel);
+        renderExecutor.execute(() -> {
+            try {
+                if (progress.isCancelled())
+                    throw new CancellationException();
+                if (shardedRenderer == null)
+                    renderOutput.output(charMatcher.chooseChars(renderCharsInRow, charList, renderDitherMode,
+                            progress));
+                else
+                    renderSharded(charList, renderCharsInRow, renderDitherMode, renderOutput, progress);
+            } catch (CancellationException e) {
+                printFromRenderThread(RENDER_CANCELLED_MSG);
+            } catch (IOException e) {
+                printFromRenderThread(SHARDED_RENDER_FAILED_MSG, e.getMessage());
+            } finally {
+                renders.remove(progress);
+                if (renders.isEmpty())
+                    schedulePrecompute(renderCharsInRow);
+            }
+        });
+    }
+
+    /**
+     * Prints a message from the render thread. The message may scroll the console, so the next update of a
+     * console output draws the whole grid again instead of only its changed rows.
+     */
+    private static void printFromRenderThread(String format, Object... args) {
+        System.out.printf(format, args);
+        ConsoleAsciiOutput.textPrinted();
+    }
+
+    /**
+     * Renders the image with the worker processes. Runs on the render thread. The workers open the file
+     * themselves, so its header is read again first, in case the file changed since the last render.
+     * @throws IOException if a worker failed, or all the workers disconnected.
+     */
+    private void renderSharded(Character[] charList, int renderCharsInRow, DitherMode renderDitherMode,
+                               AsciiOutput renderOutput, RenderProgress progress) throws IOException {
+        Image newImg = Image.headerFromFile(imagePath);
+        if (newImg == null) {
+            printFromRenderThread(OPEN_FAILED_MSG, imagePath);
+            return;
+        }
+        minCharsInRow = max(1, newImg.getWidth()/newImg.getHeight());
+        maxCharsInRow = newImg.getWidth() / MIN_PIXELS_PER_CHAR;
+        img = newImg;
+        int numCharsInRow = max(min(renderCharsInRow, maxCharsInRow), minCharsInRow);
+        renderOutput.output(charMatcher.chooseChars(
+                shardedRenderer.brightnessGrid(imagePath, newImg, numCharsInRow, progress),
+                charList, renderDitherMode, progress));
+    }
+
+    /**
+     * Sets the number of worker processes that render stripes of the image. 0 renders in this process. The
+     * workers are started on this machine, after the renders that were already requested. While rendering with
+     * workers, this process drops the decoded image and keeps only its dimensions; going back to 0 decodes the
+     * image file again.
+     * @param s string that represents the number of worker processes.
+     */
+    private void shardsChange(String s) {
+        int numWorkers;
+        try {
+            numWorkers = Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            numWorkers = -1;
+        }
+        if (numWorkers < 0 || (numWorkers > 0 && imagePath == null)) {
+            System.out.println(INVALID_INPUT);
+            return;
+        }
+        int newNumWorkers = numWorkers;
+        int currentCharsInRow = charsInRow;
+        renderExecutor.execute(() -> {
+            if (newNumWorkers > 0)
+                startWorkers(newNumWorkers);
+            else
+                stopWorkers(currentCharsInRow);
+        });
+    }
+
+    /**
+     * Starts the given number of worker processes, instead of the current ones if any, and replaces the image
+     * with its header. Runs on the render thread.
+     */
+    private void startWorkers(int numWorkers) {
+        Image header = Image.headerFromFile(imagePath);
+        if (header == null) {
+            printFromRenderThread(OPEN_FAILED_MSG, imagePath);
+            return;
+        }
+        ShardedRenderer newShardedRenderer;
+        try {
+            newShardedRenderer = ShardedRenderer.spawn(numWorkers);
+        } catch (IOException e) {
+            printFromRenderThread(SHARDS_FAILED_MSG, e.getMessage());
+            return;
+        }
+        if (shardedRenderer != null)
+            shardedRenderer.close();
+        shardedRenderer = newShardedRenderer;
+        precomputes.forEach(RenderProgress::cancel);
+        useImage(header);
+        printFromRenderThread(SHARDS_INDICATOR, numWorkers);
+    }
+
+    /**
+     * Stops the worker processes, if any, and decodes the image file again to render in this process. Runs on
+     * the render thread.
+     */
+    @SuppressWarnings("try")
+    private void stopWorkers(int currentCharsInRow) {
+        if (shardedRenderer != null) {
+            Image newImg;
+            try (StageTimer timer = Stats.time(Stage.DECODE)) {
+                newImg = Image.fromFile(imagePath);
+            }
+            if (newImg == null) {
+                printFromRenderThread(OPEN_FAILED_MSG, imagePath);
+                return;
+            }
+            shardedRenderer.close();
+            shardedRenderer = null;
+            useImage(newImg);
+            schedulePrecompute(currentCharsInRow);
+        }
+        printFromRenderThread(SHARDS_INDICATOR, 0);
+    }
+
+    /**
+     * Replaces the image, or its header, after switching between rendering in this process and with workers.
+     * Runs on the render thread.
+     */
+    private void useImage(Image newImg) {
+        minCharsInRow = max(1, newImg.getWidth()/newImg.getHeight());
+        maxCharsInRow = newImg.getWidth() / MIN_PIXELS_PER_CHAR;
+        img = newImg;
+        charMatcher = new BrightnessImgCharMatcher(newImg, FONT_NAME);
+        lastWatchGrid = null;
+        lastWatchChars = null;
+    }
+
+    /**
+     * Starts watching the image file. Renders the image now, and again, in the background, whenever the file is
+     * written, with the settings at the time of the call. Only the sub images whose pixels changed are matched
+     * again, and only the changed rows are redrawn when rendering to the console.
+     */
+    private void startWatch() {
+        if (imagePath == null) {
+            System.out.println(NO_FILE_MSG);
+            return;
+        }
+        if (watcher != null) {
+            System.out.println(ALREADY_WATCHING_MSG);
+            return;
+        }
+        if (charSet.size() == 0)
+            return;
+        Character[] charList = charSet.toArray(new Character[0]);
+        AsciiOutput watchOutput = output;
+        int watchCharsInRow = charsInRow;
+        DitherMode watchDitherMode = ditherMode;
+        try {
+            watcher = new ImageWatcher(Paths.get(imagePath), () -> scheduleWatchRender(
+                    charList, watchCharsInRow, watchDitherMode, watchOutput, true));
+        } catch (IOException e) {
+            System.out.printf(WATCH_FAILED_MSG, imagePath);
+            return;
+        }
+        System.out.printf(WATCHING_MSG, imagePath);
+        scheduleWatchRender(charList, watchCharsInRow, watchDitherMode, watchOutput, false);
+    }
+
+    /**
+     * Stops watching the image file.
+     */
+    private void stopWatch() {
+        if (watcher == null) {
+            System.out.println(NOT_WATCHING_MSG);
+            return;
+        }
+        watcher.stop();
+        watcher = null;
+    }
+
+    /**
+     * Queues a watch render, unless one is already waiting to run, in which case it will see the latest
+     * version of the file anyway.
+     */
+    private void scheduleWatchRender(Character[] charList, int watchCharsInRow, DitherMode watchDitherMode,
+                                     AsciiOutput watchOutput, boolean reload) {
+        if (!watchRenderPending.compareAndSet(false, true))
+            return;
+        RenderProgress progress = new RenderProgress();
+        renders.add(progress);
+        precomputes.forEach(RenderProgress::cancel);
+        renderExecutor.execute(() -> {
+            watchRenderPending.set(false);
+            try {
+                if (progress.isCancelled())
+                    throw new CancellationException();
+                watchRender(charList, watchCharsInRow, watchDitherMode, watchOutput, reload, progress);
+            } catch (CancellationException e) {
+                printFromRenderThread(RENDER_CANCELLED_MSG);
+            } finally {
+                renders.remove(progress);
+            }
+        });
+    }
+
+    /**
+     * Renders the image as part of watching it. Runs on the render thread.
+     * @param reload whether to open the image file again and render only what changed since the last watch
+     *               render, or to render the current image from scratch.
+     */
+    @SuppressWarnings("try")
+    private void watchRender(Character[] charList, int watchCharsInRow, DitherMode watchDitherMode,
+                             AsciiOutput watchOutput, boolean reload, RenderProgress progress) {
+        if (shardedRenderer != null) {
+            watchRenderSharded(charList, watchCharsInRow, watchDitherMode, watchOutput, reload, progress);
+            return;
+        }
+        Image newImg = img;
+        BrightnessImgCharMatcher newMatcher = charMatcher;
+        if (reload) {
+            try (StageTimer timer = Stats.time(Stage.DECODE)) {
+                newImg = Image.fromFile(imagePath);
+            } catch (RuntimeException e) { //some decoders throw on data that ends in the middle
+                newImg = null;
+            }
+            if (newImg == null) //probably written only partly, the end of the write will trigger another render
+                return;
+            newMatcher = new BrightnessImgCharMatcher(newImg, FONT_NAME);
+        }
+        int newMinCharsInRow = max(1, newImg.getWidth()/newImg.getHeight());
+        int newMaxCharsInRow = newImg.getWidth() / MIN_PIXELS_PER_CHAR;
+        int numCharsInRow = max(min(watchCharsInRow, newMaxCharsInRow), newMinCharsInRow);
+        BrightnessGrid grid;
+        CharGrid chars;
+        boolean[] changedRows;
+        if (reload && lastWatchChars != null && lastWatchGrid.getPixels() == newImg.getWidth() / numCharsInRow &&
+            img.getWidth() == newImg.getWidth() && img.getHeight() == newImg.getHeight()) {
+            boolean[] changedTiles = newMatcher.changedTiles(img, numCharsInRow);
+            grid = newMatcher.brightnessGrid(lastWatchGrid, changedTiles, progress);
+            chars = newMatcher.chooseChars(grid, charList, watchDitherMode, lastWatchChars, changedTiles);
+            changedRows = new boolean[chars.getNumRows()];
+            boolean anyChanged = false;
+            for (int row = 0; row < chars.getNumRows(); row++) {
+                for (int col = 0; col < chars.getNumCols() && !changedRows[row]; col++)
+                    changedRows[row] = chars.indexAt(row, col) != lastWatchChars.indexAt(row, col);
+                anyChanged |= changedRows[row];
+            }
+            if (!anyChanged) {
+                img = newImg;
+                charMatcher = newMatcher;
+                lastWatchGrid = grid;
+                return;
+            }
+        }
+        else {
+            grid = newMatcher.brightnessGrid(numCharsInRow, progress);
+            chars = newMatcher.chooseChars(grid, charList, watchDitherMode, progress);
+            changedRows = new boolean[chars.getNumRows()];
+            Arrays.fill(changedRows, true);
+        }
+        minCharsInRow = newMinCharsInRow;
+        maxCharsInRow = newMaxCharsInRow;
+        img = newImg;
+        charMatcher = newMatcher;
+        lastWatchGrid = grid;
+        lastWatchChars = chars;
+        watchOutput.update(chars, changedRows);
+    }
+
+    /**
+     * Renders the image as part of watching it, with the worker processes. Runs on the render thread. The
+     * workers open the file themselves, so only its header is read again here. All the sub images are
+     * calculated again, and only the rows whose chars changed are redrawn.
+     * @param reload whether to read the header of the image file again and redraw only what changed since the
+     *               last watch render, or to render and draw the whole image.
+     */
+    private void watchRenderSharded(Character[] charList, int watchCharsInRow, DitherMode watchDitherMode,
+                                    AsciiOutput watchOutput, boolean reload, RenderProgress progress) {
+        Image newImg = reload ? Image.headerFromFile(imagePath) : img;
+        if (newImg == null) //probably written only partly, the end of the write will trigger another render
+            return;
+        int newMinCharsInRow = max(1, newImg.getWidth()/newImg.getHeight());
+        int newMaxCharsInRow = newImg.getWidth() / MIN_PIXELS_PER_CHAR;
+        int numCharsInRow = max(min(watchCharsInRow, newMaxCharsInRow), newMinCharsInRow);
+        CharGrid chars;
+        try {
+            chars = charMatcher.chooseChars(
+                    shardedRenderer.brightnessGrid(imagePath, newImg, numCharsInRow, progress),
+                    charList, watchDitherMode, progress);
+        } catch (IOException e) {
+            printFromRenderThread(SHARDED_RENDER_FAILED_MSG, e.getMessage());
+            return;
+        }
+        boolean redrawAll = !reload || lastWatchChars == null || lastWatchChars.getNumRows() != chars.getNumRows() ||
+                            lastWatchChars.getNumCols() != chars.getNumCols();
+        boolean[] changedRows = new boolean[chars.getNumRows()];
+        boolean anyChanged = false;
+        for (int row = 0; row < chars.getNumRows(); row++) {
+            changedRows[row] = redrawAll;
+            for (int col = 0; col < chars.getNumCols() && !changedRows[row]; col++)
+                changedRows[row] = chars.charAt(row, col) != lastWatchChars.charAt(row, col);
+            anyChanged |= changedRows[row];
+        }
+        minCharsInRow = newMinCharsInRow;
+        maxCharsInRow = newMaxCharsInRow;
+        img = newImg;
+        lastWatchChars = chars;
+        if (anyChanged)
+            watchOutput.update(chars, changedRows);
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+package ascii_art.img_to_char;
+
+/**
+ * The average brightness of every sub image of an image, for one sub image size. The values are kept in a
+ * single flat array, row after row.
+ */
+public class BrightnessGrid {
+    private final float[] brightness;
+    private final int numRows;
+    private final int numCols;
+    private final int pixels;
+
+    /**
+     * Constructor. All the values are initially 0.
+     * @param numRows - number of sub images in a column of the image.
+     * @param numCols - number of sub images in a row of the image.
+     * @param pixels - width and height, in pixels, of each sub image.
+     */
+    public BrightnessGrid(int numRows, int numCols, int pixels) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.pixels = pixels;
+        brightness = new float[numRows * numCols];
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getPixels() {
+        return pixels;
+    }
+
+    public float get(int row, int col) {
+        return brightness[row * numCols + col];
+    }
+
+    public void set(int row, int col, float value) {
+        brightness[row * numCols + col] = value;
+    }
+
+    /**
+     * Derives the grid of a coarser resolution, whose sub images are blocks of factor X factor of this grid's
+     * sub images, by averaging the brightness of each block. Sub images at the bottom and right edges that don't
+     * fill a whole block are dropped, just like the pixels that don't fill a whole sub image are.
+     * @param factor - number of this grid's sub images in each row and column of a block.
+     * @return - the grid of sub images of size pixels * factor.
+     */
+    public BrightnessGrid downsample(int factor) {
+        BrightnessGrid coarse = new BrightnessGrid(numRows / factor, numCols / factor, pixels * factor);
+        for (int row = 0; row < coarse.numRows; row++) {
+            for (int col = 0; col < coarse.numCols; col++) {
+                double sum = 0;
+                for (int blockRow = row * factor; blockRow < (row + 1) * factor; blockRow++) {
+                    for (int blockCol = col * factor; blockCol < (col + 1) * factor; blockCol++)
+                        sum += get(blockRow, blockCol);
+                }
+                coarse.set(row, col, (float) (sum / (factor * factor)));
+            }
+        }
+        return coarse;
+    }
+
+    /**
+     * @return - an estimate of the memory the grid takes, in bytes.
+     */
+    long sizeInBytes() {
+        return 4L * brightness.length;
+    }
+}
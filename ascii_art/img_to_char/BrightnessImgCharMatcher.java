@@ -1,9 +1,15 @@
 package ascii_art.img_to_char;
 
+import ascii_output.CharGrid;
 import image.Image;
+import stats.Counter;
+import stats.Stage;
+import stats.StageTimer;
+import stats.Stats;
 
 import java.awt.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 /**
  * Responsible for converting images to an ASCII art - receives address to the picture and returns the same
@@ -15,10 +21,14 @@ public class BrightnessImgCharMatcher {
     private static final float RED = 0.2126f;
     private static final float GREEN = 0.7152f;
     private static final float BLUE = 0.0722f;
+    private static final long DEFAULT_GRID_CACHE_BYTES = 32L * 1024 * 1024;
 
     private final Image image;
     private final String font;
     private final HashMap<Image, Double> cache = new HashMap<>();
+    private final LinkedHashMap<Integer, BrightnessGrid> gridCache = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxGridCacheBytes;
+    private long gridCacheBytes = 0;
 
     /**
      * Constructor.
@@ -26,31 +36,50 @@ public class BrightnessImgCharMatcher {
      * @param font - font type of the ASCII letters to be used in the ASCII art.
      */
     public BrightnessImgCharMatcher(Image image, String font) {
+        this(image, font, DEFAULT_GRID_CACHE_BYTES);
+    }
+
+    /**
+     * Constructor.
+     * @param image - image to convert to an ASCII art image.
+     * @param font - font type of the ASCII letters to be used in the ASCII art.
+     * @param maxGridCacheBytes - memory cap, in bytes, of the brightness grids kept for reuse. When the cap is
+     *                          reached, the least recently used grids are dropped.
+     */
+    public BrightnessImgCharMatcher(Image image, String font, long maxGridCacheBytes) {
         this.image = image;
         this.font = font;
+        this.maxGridCacheBytes = maxGridCacheBytes;
     }
 
     /**
      * Calculates the brightness level of each given character.
      * @param charSet - array of characters to calculate their character level.
+     * @param progress - checked for cancellation before every character.
      * @return - new array of the corresponding brightness level of each character in the given array.
+     * @throws CancellationException - if the progress was cancelled before all characters were rendered.
      */
-    private float[] brightnessLevel(Character[] charSet) {
-        float[] result = new float[charSet.length];
-        int charIdx = 0;
-        for (Character character: charSet ) {
-            boolean[][] curCharBrightness = CharRenderer.getImg(character, NUM_OF_PIXELS, font);
-            float whiteCounter = 0;
-            for (boolean[] charBrightness : curCharBrightness) {
-                for (boolean brightness : charBrightness) {
-                    if (brightness)
-                        whiteCounter++;
+    @SuppressWarnings("try")
+    private float[] brightnessLevel(Character[] charSet, RenderProgress progress) {
+        try (StageTimer timer = Stats.time(Stage.GLYPH_RENDER)) {
+            float[] result = new float[charSet.length];
+            int charIdx = 0;
+            for (Character character: charSet ) {
+                if (progress.isCancelled())
+                    throw new CancellationException();
+                boolean[][] curCharBrightness = CharRenderer.getImg(character, NUM_OF_PIXELS, font);
+                float whiteCounter = 0;
+                for (boolean[] charBrightness : curCharBrightness) {
+                    for (boolean brightness : charBrightness) {
+                        if (brightness)
+                            whiteCounter++;
+                    }
                 }
+                result[charIdx] = whiteCounter / (NUM_OF_PIXELS * NUM_OF_PIXELS);
+                charIdx++;
             }
-            result[charIdx] = whiteCounter / (NUM_OF_PIXELS * NUM_OF_PIXELS);
-            charIdx++;
+            return result;
         }
-        return result;
     }
 
     /**
@@ -85,52 +114,418 @@ public class BrightnessImgCharMatcher {
     private double averageBrightnessPerImage(Image image) {
         if (image == null) return 0f;
         if (cache.containsKey(image)) {
+            Stats.increment(Counter.BRIGHTNESS_CACHE_HITS);
             return cache.get(image);
         }
+        Stats.increment(Counter.BRIGHTNESS_CACHE_MISSES);
+        double averageBrightness = computeAverageBrightness(image);
+        cache.put(image, averageBrightness);
+        return averageBrightness;
+    }
 
+    /**
+     * Calculates the average brightness of the given image's pixels, without looking at the cache.
+     * @param image - image to calculate its brightness.
+     * @return - image's average brightness level.
+     */
+    private static double computeAverageBrightness(Image image) {
         float pixelsBrightness = 0;
         int numOfPixels = 0;
         for (Color pixel: image.pixels()) {
             numOfPixels++;
-            float noColorPixel = pixel.getBlue();
-            if (!(pixel.equals(Color.WHITE) || pixel.equals(Color.BLACK))) {
-                noColorPixel = pixel.getRed() * RED + pixel.getGreen() * GREEN + pixel.getBlue() * BLUE;
-            }
-            pixelsBrightness += (noColorPixel / RANGE);
+            pixelsBrightness += pixelBrightness(pixel);
         }
-        cache.put(image, (double) pixelsBrightness / numOfPixels);
         return (double) pixelsBrightness / numOfPixels;
     }
 
+    /**
+     * Calculates the average brightness of a sub image whose pixels are all of the given color. The single
+     * brightness is added up once per pixel, in float like computeAverageBrightness, so the result is the same
+     * to the bit.
+     * @param color - the color of all the sub image's pixels.
+     * @param numOfPixels - number of pixels in the sub image.
+     * @return - the sub image's average brightness level.
+     */
+    private static double uniformBrightness(Color color, int numOfPixels) {
+        float brightness = pixelBrightness(color);
+        float pixelsBrightness = 0;
+        for (int i = 0; i < numOfPixels; i++)
+            pixelsBrightness += brightness;
+        return (double) pixelsBrightness / numOfPixels;
+    }
+
+    /**
+     * Calculates the average brightness of a single sub image. If the image knows the sub image is of a single
+     * color, the brightness of that color is taken from the given levels, and calculated only the first time
+     * the color is met, so the sub image costs the same whatever its size.
+     * @param row - row of the sub image in the grid.
+     * @param col - column of the sub image in the grid.
+     * @param pixels - width and height, in pixels, of the sub image.
+     * @param speculative - whether the sub image is calculated by background precomputation, which doesn't
+     *                    use the cache of sub images' brightness and isn't counted as a render's work.
+     * @param uniformLevels - the brightness of the uniform sub images met so far, by their color's RGB value.
+     * @return - the sub image's average brightness level.
+     */
+    private float tileBrightness(int row, int col, int pixels, boolean speculative,
+                                 Map<Integer, Float> uniformLevels) {
+        Color uniformColor = image.getUniformColor(col * pixels, row * pixels, pixels);
+        if (uniformColor != null) {
+            if (!speculative)
+                Stats.increment(Counter.UNIFORM_TILES);
+            return uniformLevels.computeIfAbsent(uniformColor.getRGB(),
+                    rgb -> (float) uniformBrightness(uniformColor, pixels * pixels));
+        }
+        Image subImage = image.squareSubImage(col * pixels, row * pixels, pixels);
+        return (float) (speculative ? computeAverageBrightness(subImage) : averageBrightnessPerImage(subImage));
+    }
+
+    /**
+     * Calculates the brightness of a single pixel.
+     * @param pixel - the pixel's color.
+     * @return - the pixel's brightness, between 0 and 1.
+     */
+    private static float pixelBrightness(Color pixel) {
+        float noColorPixel = pixel.getBlue();
+        if (!(pixel.equals(Color.WHITE) || pixel.equals(Color.BLACK))) {
+            noColorPixel = pixel.getRed() * RED + pixel.getGreen() * GREEN + pixel.getBlue() * BLUE;
+        }
+        return noColorPixel / RANGE;
+    }
+
+    /**
+     * Calculates the average brightness of every sub image of size pixels X pixels.
+     * @param pixels - width and height, in pixels, of each sub image.
+     * @param speculative - whether the grid is calculated by background precomputation. Precomputation doesn't
+     *                    use or fill the cache of sub images' brightness, so its memory use is bounded by the
+     *                    grid cache's cap, and its time and sub images are counted apart from renders', since
+     *                    it may be cancelled or never used.
+     * @param progress - updated after every sub image, and checked for cancellation.
+     * @return - the brightness of every sub image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were calculated.
+     */
+    @SuppressWarnings("try")
+    private BrightnessGrid computeBrightnessGrid(int pixels, boolean speculative, RenderProgress progress) {
+        try (StageTimer timer = Stats.time(speculative ? Stage.PRECOMPUTE : Stage.BRIGHTNESS)) {
+            BrightnessGrid grid = new BrightnessGrid(image.getHeight()/pixels, image.getWidth()/pixels, pixels);
+            progress.start(grid.getNumRows() * grid.getNumCols());
+            Map<Integer, Float> uniformLevels = new HashMap<>();
+            for (int row = 0; row < grid.getNumRows(); row++) {
+                for (int col = 0; col < grid.getNumCols(); col++) {
+                    if (progress.isCancelled())
+                        throw new CancellationException();
+                    grid.set(row, col, tileBrightness(row, col, pixels, speculative, uniformLevels));
+                    progress.tileDone();
+                    Stats.increment(speculative ? Counter.TILES_PRECOMPUTED : Counter.TILES_PROCESSED);
+                }
+            }
+            return grid;
+        }
+    }
+
+    /**
+     * Returns the brightness grid for the given resolution from the grid cache, or calculates it and stores it
+     * in the grid cache.
+     * @param numCharsInRow - resolution of the picture - number of ASCII chars in each row and column.
+     * @param speculative - whether the grid is calculated by background precomputation, whose grid cache
+     *                    lookups aren't counted.
+     * @param progress - updated after every sub image, and checked for cancellation.
+     * @return - the brightness of every sub image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were calculated.
+     */
+    private BrightnessGrid brightnessGrid(int numCharsInRow, boolean speculative, RenderProgress progress) {
+        if (progress.isCancelled())
+            throw new CancellationException();
+        int pixels = image.getWidth() / numCharsInRow;
+        BrightnessGrid grid;
+        synchronized (gridCache) {
+            grid = gridCache.get(pixels);
+        }
+        if (grid != null) {
+            if (!speculative)
+                Stats.increment(Counter.GRID_CACHE_HITS);
+            progress.start(grid.getNumRows() * grid.getNumCols());
+            progress.tilesDone(grid.getNumRows() * grid.getNumCols());
+            return grid;
+        }
+        if (!speculative)
+            Stats.increment(Counter.GRID_CACHE_MISSES);
+        grid = computeBrightnessGrid(pixels, speculative, progress);
+        storeGrid(grid);
+        return grid;
+    }
+
+    /**
+     * Stores the given grid in the grid cache, unless a grid of the same sub image size is already stored.
+     * Drops the least recently used grids until the cache is within its memory cap.
+     * @param grid - the brightness grid to store.
+     */
+    private void storeGrid(BrightnessGrid grid) {
+        synchronized (gridCache) {
+            if (grid.sizeInBytes() <= maxGridCacheBytes && !gridCache.containsKey(grid.getPixels())) {
+                Iterator<BrightnessGrid> eldest = gridCache.values().iterator();
+                while (gridCacheBytes + grid.sizeInBytes() > maxGridCacheBytes) {
+                    gridCacheBytes -= eldest.next().sizeInBytes();
+                    eldest.remove();
+                }
+                gridCache.put(grid.getPixels(), grid);
+                gridCacheBytes += grid.sizeInBytes();
+            }
+        }
+    }
+
+    /**
+     * Returns the average brightness of every sub image for the given resolution, from the grid cache if it
+     * was already calculated.
+     * @param numCharsInRow - resolution of the picture - number of ASCII chars in each row and column.
+     * @param progress - updated after every sub image, and checked for cancellation.
+     * @return - the brightness of every sub image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were calculated.
+     */
+    public BrightnessGrid brightnessGrid(int numCharsInRow, RenderProgress progress) {
+        return brightnessGrid(numCharsInRow, false, progress);
+    }
+
+    /**
+     * Finds the sub images whose pixels are different in this matcher's image and in the given image.
+     * @param previousImage - image of the same width and height as this matcher's image.
+     * @param numCharsInRow - resolution of the picture - number of ASCII chars in each row and column.
+     * @return - for every sub image, row after row, whether any of its pixels changed.
+     */
+    public boolean[] changedTiles(Image previousImage, int numCharsInRow) {
+        if (previousImage.getWidth() != image.getWidth() || previousImage.getHeight() != image.getHeight())
+            throw new IllegalArgumentException();
+        int pixels = image.getWidth() / numCharsInRow;
+        int numCols = image.getWidth() / pixels;
+        boolean[] changed = new boolean[(image.getHeight() / pixels) * numCols];
+        for (int tile = 0; tile < changed.length; tile++) {
+            int startX = (tile % numCols) * pixels;
+            int startY = (tile / numCols) * pixels;
+            for (int y = startY; y < startY + pixels && !changed[tile]; y++) {
+                for (int x = startX; x < startX + pixels && !changed[tile]; x++) {
+                    if (!image.getPixel(x, y).equals(previousImage.getPixel(x, y)))
+                        changed[tile] = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Calculates the brightness grid of this matcher's image from the grid of a previous version of the image,
+     * going over the pixels of the changed sub images only, and stores it in the grid cache.
+     * @param previousGrid - the brightness grid of the previous version of the image.
+     * @param changedTiles - for every sub image, row after row, whether it changed since the previous version.
+     * @param progress - updated after every sub image, and checked for cancellation.
+     * @return - the brightness of every sub image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were calculated.
+     */
+    @SuppressWarnings("try")
+    public BrightnessGrid brightnessGrid(BrightnessGrid previousGrid, boolean[] changedTiles,
+                                         RenderProgress progress) {
+        BrightnessGrid grid = new BrightnessGrid(previousGrid.getNumRows(), previousGrid.getNumCols(),
+                previousGrid.getPixels());
+        try (StageTimer timer = Stats.time(Stage.BRIGHTNESS)) {
+            progress.start(changedTiles.length);
+            Map<Integer, Float> uniformLevels = new HashMap<>();
+            for (int tile = 0; tile < changedTiles.length; tile++) {
+                if (progress.isCancelled())
+                    throw new CancellationException();
+                int row = tile / grid.getNumCols();
+                int col = tile % grid.getNumCols();
+                if (changedTiles[tile]) {
+                    grid.set(row, col, tileBrightness(row, col, grid.getPixels(), false, uniformLevels));
+                    Stats.increment(Counter.TILES_PROCESSED);
+                }
+                else
+                    grid.set(row, col, previousGrid.get(row, col));
+                progress.tileDone();
+            }
+        }
+        storeGrid(grid);
+        return grid;
+    }
+
+    /**
+     * Calculates the brightness grid for the given resolution ahead of time, so a following chooseChars with
+     * the same resolution doesn't need to go over the image's pixels. Does nothing if the grid is already
+     * stored. Meant to be called from a background thread while the user is idle. Its time and sub images are
+     * counted in the PRECOMPUTE stage and the TILES_PRECOMPUTED counter, apart from those of renders.
+     * @param numCharsInRow - resolution of the picture - number of ASCII chars in each row and column.
+     * @param progress - checked for cancellation after every sub image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were calculated.
+     */
+    public void precompute(int numCharsInRow, RenderProgress progress) {
+        if (image != null)
+            brightnessGrid(numCharsInRow, true, progress);
+    }
+
+    /**
+     * Finds the palette char whose brightness level is the closest to the given brightness.
+     * @param levels - the linearly stretched brightness level of each palette char.
+     * @param brightness - brightness level to match.
+     * @return - index in the palette of the char with the closest brightness level.
+     */
+    private int closestIndex(float[] levels, float brightness) {
+        float closestLevel = 1;
+        int closestLevelIdx = 0;
+        for (int i = 0; i < levels.length; i++) {
+            if (Math.abs(brightness - levels[i]) <= closestLevel) {
+                closestLevelIdx = i;
+                closestLevel = Math.abs(brightness - levels[i]);
+            }
+        }
+        return closestLevelIdx;
+    }
+
     /**
      * Converts the given image to an ASCII art. It divides the image to small images and each image sized
      * pixels X pixels , gets the ASCII character that replaces it according to the closest char's brightness level
-     * to it's brightness level.
-     * @param charsBrightnessLevel - map that maps each char to it's linearly stretched float.
-     * @param numCharsInRow - image resolution - number of pictures in a row.
-     * @return - 2D array that represents the ASCII char to replace each pixel in the given image.
+     * to it's brightness level. When dithering, the error between each sub image's brightness and its chosen
+     * char's brightness is spread to the sub images that were not matched yet. The sub images are visited row by
+     * row, so only the error rows that the kernel reaches are kept, and reused as a ring.
+     * @param palette - the chars to use in the art.
+     * @param levels - the linearly stretched brightness level of each palette char.
+     * @param grid - the brightness of every sub image.
+     * @param ditherMode - error-diffusion kernel to use, or NONE for plain nearest brightness matching.
+     * @param progress - checked for cancellation before every row.
+     * @return - grid that holds the ASCII char to replace each sub image in the given image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were matched.
      */
-    private char[][] convertImageToAscii(Map<Character, Float> charsBrightnessLevel, int numCharsInRow) {
-        int pixels = image.getWidth() / numCharsInRow;
-        char[][] asciiArt = new char[image.getHeight()/pixels][image.getWidth()/pixels];
-        int row = 0;
-        int col = 0;
-        for(Image subImage : image.squareSubImagesOfSize(pixels)) {
-            float averageBrightnessPerImage = (float) averageBrightnessPerImage(subImage);
-            float closestLevel = 1;
-            char closestLevelChar = 'a';
-            for (Map.Entry<Character, Float> pair: charsBrightnessLevel.entrySet()) {
-                if (Math.abs(averageBrightnessPerImage - pair.getValue()) <= closestLevel) {
-                    closestLevelChar = pair.getKey();
-                    closestLevel = Math.abs(averageBrightnessPerImage - pair.getValue());
+    @SuppressWarnings("try")
+    private CharGrid convertImageToAscii(char[] palette, float[] levels, BrightnessGrid grid,
+                                         DitherMode ditherMode, RenderProgress progress) {
+        try (StageTimer timer = Stats.time(Stage.MATCH)) {
+            int numCols = grid.getNumCols();
+            CharGrid asciiArt = new CharGrid(palette, grid.getNumRows(), numCols);
+            boolean dither = ditherMode != DitherMode.NONE;
+            float[][] errorRows = dither ? new float[ditherMode.rowsAhead() + 1][numCols + 2] : null;
+            for (int row = 0; row < grid.getNumRows(); row++) {
+                if (progress.isCancelled())
+                    throw new CancellationException();
+                for (int col = 0; col < numCols; col++) {
+                    float averageBrightnessPerImage = grid.get(row, col);
+                    if (dither) {
+                        float[] errorRow = errorRows[row % errorRows.length];
+                        float brightness = Math.max(0, Math.min(1,
+                                averageBrightnessPerImage + errorRow[col + 1]));
+                        int closestLevelIdx = closestIndex(levels, brightness);
+                        ditherMode.diffuse(errorRows, row % errorRows.length, col,
+                                brightness - levels[closestLevelIdx]);
+                        asciiArt.setIndex(row, col, closestLevelIdx);
+                    }
+                    else
+                        asciiArt.setIndex(row, col, closestIndex(levels, averageBrightnessPerImage));
                 }
+                if (dither)
+                    Arrays.fill(errorRows[row % errorRows.length], 0);
             }
-            asciiArt[row][col] = closestLevelChar;
-            col = ((col + 1) % (image.getWidth() / pixels));
-            if (col == 0)
-                row++;
+            return asciiArt;
         }
-        return asciiArt;
+    }
+
+    /**
+     * Matches the given brightness grid to chars again after some sub images changed. Unless dithering, where
+     * a change spreads to the following sub images, only the changed sub images are matched, and the others keep
+     * their chars from the previous result.
+     * @param grid - the brightness of every sub image.
+     * @param charSet - ASCII chars array to use in the art, the same as in the previous result.
+     * @param ditherMode - error-diffusion kernel to use, or NONE for plain nearest brightness matching.
+     * @param previous - the previous result of matching, with the same charset and resolution.
+     * @param changedTiles - for every sub image, row after row, whether it changed since the previous result.
+     * @return - grid that holds the ASCII char to replace each sub image in the given image.
+     */
+    @SuppressWarnings("try")
+    public CharGrid chooseChars(BrightnessGrid grid, Character[] charSet, DitherMode ditherMode,
+                                CharGrid previous, boolean[] changedTiles) {
+        Palette palette = palette(charSet, new RenderProgress());
+        if (ditherMode != DitherMode.NONE || !palette.sameAs(previous) ||
+            previous.getNumRows() != grid.getNumRows() || previous.getNumCols() != grid.getNumCols())
+            return convertImageToAscii(palette.chars, palette.levels, grid, ditherMode, new RenderProgress());
+        try (StageTimer timer = Stats.time(Stage.MATCH)) {
+            CharGrid asciiArt = previous.copy();
+            for (int tile = 0; tile < changedTiles.length; tile++) {
+                if (changedTiles[tile]) {
+                    int row = tile / grid.getNumCols();
+                    int col = tile % grid.getNumCols();
+                    asciiArt.setIndex(row, col, closestIndex(palette.levels, grid.get(row, col)));
+                }
+            }
+            return asciiArt;
+        }
+    }
+
+    /**
+     * Matches every sub image in the given brightness grid to the char with the closest brightness level.
+     * @param grid - the brightness of every sub image.
+     * @param charSet - ASCII chars array to use in the art.
+     * @param ditherMode - error-diffusion kernel to use, or NONE for plain nearest brightness matching.
+     * @return - grid that holds the ASCII char to replace each sub image in the given image.
+     */
+    public CharGrid chooseChars(BrightnessGrid grid, Character[] charSet, DitherMode ditherMode) {
+        return chooseChars(grid, charSet, ditherMode, new RenderProgress());
+    }
+
+    /**
+     * Same as chooseChars(grid, charSet, ditherMode), but stops if the given progress is cancelled.
+     * @param grid - the brightness of every sub image.
+     * @param charSet - ASCII chars array to use in the art.
+     * @param ditherMode - error-diffusion kernel to use, or NONE for plain nearest brightness matching.
+     * @param progress - checked for cancellation before rendering every char of the charset and before matching
+     *                 every row.
+     * @return - grid that holds the ASCII char to replace each sub image in the given image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were matched.
+     */
+    public CharGrid chooseChars(BrightnessGrid grid, Character[] charSet, DitherMode ditherMode,
+                                RenderProgress progress) {
+        Palette palette = palette(charSet, progress);
+        return convertImageToAscii(palette.chars, palette.levels, grid, ditherMode, progress);
+    }
+
+    /**
+     * The chars to use in the art and their linearly stretched brightness levels, at matching indices.
+     */
+    private static class Palette {
+        final char[] chars;
+        final float[] levels;
+
+        Palette(char[] chars, float[] levels) {
+            this.chars = chars;
+            this.levels = levels;
+        }
+
+        boolean sameAs(CharGrid charGrid) {
+            if (charGrid.getPaletteSize() != chars.length)
+                return false;
+            for (int i = 0; i < chars.length; i++) {
+                if (charGrid.getPaletteChar(i) != chars[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Calculates the linearly stretched brightness level of each given char.
+     * @param charSet - ASCII chars array to use in the art.
+     * @param progress - checked for cancellation before rendering every char.
+     * @return - the chars, without repetitions, and their brightness levels.
+     * @throws CancellationException - if the progress was cancelled before all chars were rendered.
+     */
+    private Palette palette(Character[] charSet, RenderProgress progress) {
+        float[] brightnessLevel = brightnessLevel(charSet, progress);
+        float[] linearStretch = linearStretch(brightnessLevel);
+        Map<Character, Float> map = new HashMap<>();
+        for (int i = 0; i < linearStretch.length; i++)
+            map.put(charSet[i], linearStretch[i]);
+        char[] chars = new char[map.size()];
+        float[] levels = new float[map.size()];
+        int i = 0;
+        for (Map.Entry<Character, Float> pair: map.entrySet()) {
+            chars[i] = pair.getKey();
+            levels[i] = pair.getValue();
+            i++;
+        }
+        return new Palette(chars, levels);
     }
 
     /**
@@ -139,17 +534,42 @@ public class BrightnessImgCharMatcher {
      * that replaces it according to the closest char's brightness level to it's brightness level.
      * @param numCharsInRow - resolution of the picture - number of ASCII chars in each row and column.
      * @param charSet - ASCII chars array to use in the art.
-     * @return - 2D array that represents the ASCII char to replace each pixel in the given image.
+     * @return - grid that holds the ASCII char to replace each sub image in the given image.
+     */
+    public CharGrid chooseChars(int numCharsInRow, Character[] charSet) {
+        return chooseChars(numCharsInRow, charSet, DitherMode.NONE);
+    }
+
+    /**
+     * Same as chooseChars(numCharsInRow, charSet), but spreads the brightness error of each sub image to its
+     * neighbours according to the given dithering mode, which reduces banding when the charset is small.
+     * @param numCharsInRow - resolution of the picture - number of ASCII chars in each row and column.
+     * @param charSet - ASCII chars array to use in the art.
+     * @param ditherMode - error-diffusion kernel to use, or NONE for plain nearest brightness matching.
+     * @return - grid that holds the ASCII char to replace each sub image in the given image.
+     */
+    public CharGrid chooseChars(int numCharsInRow, Character[] charSet, DitherMode ditherMode) {
+        return chooseChars(numCharsInRow, charSet, ditherMode, new RenderProgress());
+    }
+
+    /**
+     * Same as chooseChars(numCharsInRow, charSet, ditherMode), but reports the number of sub images that were
+     * matched to the given progress, and stops if the progress is cancelled. Meant to be called from a
+     * background thread, while another thread polls or cancels the progress.
+     * @param numCharsInRow - resolution of the picture - number of ASCII chars in each row and column.
+     * @param charSet - ASCII chars array to use in the art.
+     * @param ditherMode - error-diffusion kernel to use, or NONE for plain nearest brightness matching.
+     * @param progress - updated after every sub image, and checked for cancellation.
+     * @return - grid that holds the ASCII char to replace each sub image in the given image.
+     * @throws CancellationException - if the progress was cancelled before all sub images were matched.
      */
-    public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
-        char[][] asciiArt = null;
+    public CharGrid chooseChars(int numCharsInRow, Character[] charSet, DitherMode ditherMode,
+                                RenderProgress progress) {
+        CharGrid asciiArt = null;
         if (image != null) {
-            float[] brightnessLevel = brightnessLevel(charSet);
-            float[] linearStretch = linearStretch(brightnessLevel);
-            Map<Character, Float> map = new HashMap<>();
-            for (int i = 0; i < linearStretch.length; i++)
-                map.put(charSet[i], linearStretch[i]);
-            asciiArt = convertImageToAscii(map, numCharsInRow);
+            BrightnessGrid grid = brightnessGrid(numCharsInRow, true, progress);
+            Palette palette = palette(charSet, progress);
+            asciiArt = convertImageToAscii(palette.chars, palette.levels, grid, ditherMode, progress);
         }
         return asciiArt;
     }
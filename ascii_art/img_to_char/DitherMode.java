@@ -0,0 +1,61 @@
+package ascii_art.img_to_char;
+
+/**
+ * Error-diffusion kernels that can be applied while matching sub-images to characters. Each kernel spreads the
+ * difference between a sub-image's brightness and the brightness of the chosen character to the neighbouring
+ * sub-images that were not matched yet (to the right in the same row and in the rows below).
+ */
+public enum DitherMode {
+    NONE(new int[0], new int[0], new float[0], 1),
+    FLOYD_STEINBERG(
+            new int[]{1, -1, 0, 1},
+            new int[]{0, 1, 1, 1},
+            new float[]{7, 3, 5, 1}, 16),
+    ATKINSON(
+            new int[]{1, 2, -1, 0, 1, 0},
+            new int[]{0, 0, 1, 1, 1, 2},
+            new float[]{1, 1, 1, 1, 1, 1}, 8);
+
+    private final int[] dx;
+    private final int[] dy;
+    private final float[] weights;
+    private final int rowsAhead;
+
+    DitherMode(int[] dx, int[] dy, float[] weights, float divisor) {
+        this.dx = dx;
+        this.dy = dy;
+        this.weights = new float[weights.length];
+        int maxDy = 0;
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = weights[i] / divisor;
+            maxDy = Math.max(maxDy, dy[i]);
+        }
+        this.rowsAhead = maxDy;
+    }
+
+    /**
+     * @return - number of rows below the current one that the kernel spreads error to.
+     */
+    int rowsAhead() {
+        return rowsAhead;
+    }
+
+    /**
+     * Spreads the given error to the neighbours of the sub-image at the given column. The error buffers are used
+     * as a ring - the buffer of the current row is errorRows[curRow], and the buffer of the row that is dy rows
+     * below it is errorRows[(curRow + dy) % errorRows.length]. Each buffer has one padding cell on each side, so
+     * the sub-image at column col is stored in index col + 1.
+     * @param errorRows - ring of error buffers, one for the current row and one for each row ahead.
+     * @param curRow - index in the ring of the buffer of the current row.
+     * @param col - column of the sub-image whose error is spread.
+     * @param error - the difference between the sub-image's brightness and its chosen character's brightness.
+     */
+    void diffuse(float[][] errorRows, int curRow, int col, float error) {
+        for (int i = 0; i < weights.length; i++) {
+            float[] row = errorRows[(curRow + dy[i]) % errorRows.length];
+            int idx = col + 1 + dx[i];
+            if (idx < row.length)
+                row[idx] += error * weights[i];
+        }
+    }
+}
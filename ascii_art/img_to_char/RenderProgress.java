@@ -0,0 +1,61 @@
+package ascii_art.img_to_char;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the progress of a single conversion of an image to ASCII art, and allows cancelling it from another
+ * thread. The conversion checks for cancellation before calculating the brightness of every sub image, before
+ * rendering every char of the charset and before matching every row of sub images, so it stops shortly after
+ * cancel is called.
+ */
+public class RenderProgress {
+    private final AtomicInteger tilesDone = new AtomicInteger();
+    private volatile int totalTiles;
+    private volatile boolean cancelled;
+
+    /**
+     * @return - number of sub images that were already matched to a char.
+     */
+    public int getTilesDone() {
+        return tilesDone.get();
+    }
+
+    /**
+     * @return - number of sub images in the image, or 0 if the conversion didn't start yet.
+     */
+    public int getTotalTiles() {
+        return totalTiles;
+    }
+
+    /**
+     * Asks the conversion to stop. The conversion then throws a CancellationException.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Called by the conversion when it starts going over the sub images.
+     * @param totalTiles - number of sub images in the image.
+     */
+    public void start(int totalTiles) {
+        tilesDone.set(0);
+        this.totalTiles = totalTiles;
+    }
+
+    void tileDone() {
+        tilesDone.incrementAndGet();
+    }
+
+    /**
+     * Called by the conversion after it finished some of the sub images.
+     * @param numTiles - number of sub images that were finished.
+     */
+    public void tilesDone(int numTiles) {
+        tilesDone.addAndGet(numTiles);
+    }
+}
@@ -1,13 +1,21 @@
 package ascii_output;
 
 /**
- * An object implementing this interface can output a 2D array of chars
+ * An object implementing this interface can output a grid of chars
  * in some fashion.
  * @author Dan Nirel
  */
 public interface AsciiOutput {
     /**
-     * Output the specified 2D array of chars
+     * Output the specified grid of chars
      */
-    void output(char[][] chars);
+    void output(CharGrid chars);
+
+    /**
+     * Output the specified grid of chars, which replaces the previously output grid of the same size and
+     * differs from it only in the rows marked as changed. By default, outputs the whole grid again.
+     */
+    default void update(CharGrid chars, boolean[] changedRows) {
+        output(chars);
+    }
 }
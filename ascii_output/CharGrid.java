@@ -0,0 +1,77 @@
+package ascii_output;
+
+/**
+ * A 2D grid of chars stored compactly: every cell holds a one byte index into a palette of at most 256
+ * chars, and all the cells are kept in a single flat array, row after row.
+ */
+public class CharGrid {
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    private final char[] palette;
+    private final byte[] indices;
+    private final int numRows;
+    private final int numCols;
+
+    /**
+     * Constructor. All the cells initially hold the first char of the palette.
+     * @param palette - the chars that the cells can hold, at most 256 of them.
+     * @param numRows - number of rows in the grid.
+     * @param numCols - number of columns in the grid.
+     */
+    public CharGrid(char[] palette, int numRows, int numCols) {
+        if (palette.length == 0 || palette.length > MAX_PALETTE_SIZE || numRows < 0 || numCols < 0)
+            throw new IllegalArgumentException();
+        this.palette = palette.clone();
+        this.numRows = numRows;
+        this.numCols = numCols;
+        indices = new byte[numRows * numCols];
+    }
+
+    /**
+     * @return - a new grid with the same palette and the same chars in all the cells.
+     */
+    public CharGrid copy() {
+        CharGrid copy = new CharGrid(palette, numRows, numCols);
+        System.arraycopy(indices, 0, copy.indices, 0, indices.length);
+        return copy;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    public char getPaletteChar(int paletteIndex) {
+        return palette[paletteIndex];
+    }
+
+    /**
+     * @return - the palette index held by the given cell.
+     */
+    public int indexAt(int row, int col) {
+        return indices[row * numCols + col] & 0xFF;
+    }
+
+    /**
+     * @return - the char held by the given cell.
+     */
+    public char charAt(int row, int col) {
+        return palette[indexAt(row, col)];
+    }
+
+    /**
+     * Sets the given cell to hold the palette char at the given index.
+     */
+    public void setIndex(int row, int col, int paletteIndex) {
+        if (paletteIndex < 0 || paletteIndex >= palette.length)
+            throw new IndexOutOfBoundsException();
+        indices[row * numCols + col] = (byte) paletteIndex;
+    }
+}
@@ -1,16 +1,116 @@
 package ascii_output;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import stats.Counter;
+import stats.Stage;
+import stats.StageTimer;
+import stats.Stats;
+
 /**
- * Output a 2D array of chars to the console.
+ * Output a grid of chars to the console.
  * @author Dan Nirel
  */public class ConsoleAsciiOutput implements AsciiOutput{
+    private static final String CLEAR_SCREEN = "\033[2J";
+    private static final String MOVE_CURSOR = "\033[%d;1H";
+    private static final String SAVE_CURSOR = "\0337";
+    private static final String RESTORE_CURSOR = "\0338";
+    private static final String LINES_VARIABLE = "LINES";
+    private static final String TERMINAL_DEVICE = "/dev/tty";
+
+    // number of rows of the grid that update drew at the top of the screen, or 0 if the screen may not show
+    // such a grid anymore; shared by all the console outputs, since they share the screen
+    private static int gridRowsOnTop;
+
+    private final int terminalRows = terminalRows();
+
+    /**
+     * Tells the console outputs that text was printed to the console, not by them. The text may have scrolled
+     * the grid that update drew, so the next update draws the whole grid again.
+     */
+    public static void textPrinted() {
+        synchronized (ConsoleAsciiOutput.class) {
+            gridRowsOnTop = 0;
+        }
+    }
+
     @Override
-    public void output(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+    @SuppressWarnings("try")
+    public void output(CharGrid chars) {
+        textPrinted();
+        try (StageTimer timer = Stats.time(Stage.OUTPUT)) {
+            StringBuilder line = new StringBuilder(2 * chars.getNumCols());
+            for (int y = 0; y < chars.getNumRows() ; y++) {
+                System.out.println(line(chars, y, line));
+                Stats.add(Counter.BYTES_WRITTEN, line.length() + System.lineSeparator().length());
             }
-            System.out.println();
         }
     }
+
+    /**
+     * Redraws only the changed rows, in place, using ANSI escape sequences to move the cursor, and then moves
+     * the cursor back to where it was, so text that was printed below the grid since stays where it is. The
+     * rows are found by their position on the screen, so the whole grid is drawn again, from the top of a
+     * cleared screen, with the cursor left below it, when the grid isn't known to be at the top of the screen:
+     * on the first update, after other text was printed to the console, when the grid's size changed, and when
+     * the grid and the two rows below it, for the cursor and for a command typed there, don't fit in the
+     * terminal, which then scrolls it. The terminal's height is read once, when this output is created.
+     */
+    @Override
+    @SuppressWarnings("try")
+    public void update(CharGrid chars, boolean[] changedRows) {
+        try (StageTimer timer = Stats.time(Stage.OUTPUT)) {
+            StringBuilder screen = new StringBuilder();
+            StringBuilder line = new StringBuilder(2 * chars.getNumCols());
+            synchronized (ConsoleAsciiOutput.class) {
+                boolean redrawAll = gridRowsOnTop != chars.getNumRows();
+                gridRowsOnTop = chars.getNumRows() + 2 <= terminalRows ? chars.getNumRows() : 0;
+                screen.append(redrawAll ? CLEAR_SCREEN : SAVE_CURSOR);
+                for (int y = 0; y < chars.getNumRows() ; y++) {
+                    if (redrawAll || changedRows[y])
+                        screen.append(String.format(MOVE_CURSOR, y + 1)).append(line(chars, y, line));
+                }
+                screen.append(redrawAll ? String.format(MOVE_CURSOR, chars.getNumRows() + 1) : RESTORE_CURSOR);
+                System.out.print(screen);
+                System.out.flush();
+            }
+            Stats.add(Counter.BYTES_WRITTEN, screen.length());
+        }
+    }
+
+    /**
+     * Finds the height of the terminal, from the LINES environment variable if it is set, otherwise by asking
+     * stty about the controlling terminal.
+     * @return the number of rows of the terminal, or 0 if it isn't known.
+     */
+    private static int terminalRows() {
+        try {
+            String lines = System.getenv(LINES_VARIABLE);
+            if (lines != null)
+                return Integer.parseInt(lines.trim());
+            Process stty = new ProcessBuilder("stty", "size")
+                    .redirectInput(new File(TERMINAL_DEVICE))
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            String size = new String(stty.getInputStream().readAllBytes(), StandardCharsets.US_ASCII).trim();
+            if (stty.waitFor() != 0 || size.isEmpty())
+                return 0;
+            return Integer.parseInt(size.split(" ")[0]);
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    private static StringBuilder line(CharGrid chars, int y, StringBuilder line) {
+        line.setLength(0);
+        for (int x = 0; x < chars.getNumCols(); x++) {
+            line.append(chars.charAt(y, x)).append(' ');
+        }
+        return line;
+    }
 }
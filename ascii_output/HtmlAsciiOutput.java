@@ -1,12 +1,18 @@
 package ascii_output;
 
+import stats.Counter;
+import stats.Stage;
+import stats.StageTimer;
+import stats.Stats;
+
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.logging.Logger;
 
 /**
- * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Output a grid of chars to an HTML file viewable in a web browser.
  * @author Dan Nirel
  */
 public class HtmlAsciiOutput implements AsciiOutput {
@@ -22,42 +28,48 @@ public class HtmlAsciiOutput implements AsciiOutput {
     }
 
     @Override
-    public void output(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
+    @SuppressWarnings("try")
+    public void output(CharGrid chars) {
+        String[] htmlReps = new String[chars.getPaletteSize()];
+        for (int i = 0; i < htmlReps.length; i++) {
+            switch(chars.getPaletteChar(i)) {
+                case '<': htmlReps[i] = "&lt;";  break;
+                case '>': htmlReps[i] = "&gt;";  break;
+                case '&': htmlReps[i] = "&amp;"; break;
+                default:  htmlReps[i] = String.valueOf(chars.getPaletteChar(i));
+            }
+        }
+        try (StageTimer timer = Stats.time(Stage.OUTPUT)) {
+            try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+                writer.write(String.format(
+                    "<!DOCTYPE html>\n"+
+                    "<html>\n"+
+                    "<body style=\""+
+                        "\tCOLOR:#000000;"+
+                        "\tTEXT-ALIGN:center;"+
+                        "\tFONT-SIZE:1px;\">\n"+
+                    "<p style=\""+
+                        "\twhite-space:pre;"+
+                        "\tFONT-FAMILY:%s;"+
+                        "\tFONT-SIZE:%frem;"+
+                        "\tLETTER-SPACING:0.15em;"+
+                        "\tLINE-HEIGHT:%fem;\">\n",
+                        fontName, BASE_FONT_SIZE/chars.getNumCols(), BASE_LINE_SPACING));
 
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
+                for(int y = 0 ; y < chars.getNumRows() ; y++) {
+                    for (int x = 0; x < chars.getNumCols() ; x++) {
+                        writer.write(htmlReps[chars.indexAt(y, x)]);
                     }
-                    writer.write(htmlRep);
+                    writer.newLine();
                 }
-                writer.newLine();
+                writer.write(
+                    "</p>\n"+
+                    "</body>\n"+
+                    "</html>\n");
+            } catch(IOException e) {
+                Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
-        } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            Stats.add(Counter.BYTES_WRITTEN, new File(filename).length());
         }
     }
 }
@@ -1,9 +1,13 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * A package-private class of the package image.
@@ -13,32 +17,78 @@ class FileImage implements Image {
     private static final Color DEFAULT_COLOR = Color.WHITE;
 
     private final Color[][] pixelArray;
+    private UniformityIndex uniformityIndex;
 
     public FileImage(String filename) throws IOException {
         java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null)
+            throw new IOException("Unsupported image format: " + filename);
         int origWidth = im.getWidth(), origHeight = im.getHeight();
+        int newHeight = getPowerOfTwoGreaterThan(origHeight);
+        pixelArray = new Color[newHeight][];
+        fillRows(im, origWidth, origHeight, 0, 0);
+    }
+
+    /**
+     * Opens only the rows [startY, startY+height) of the image that FileImage(filename) would open, with the
+     * same margins, decoding from the file only the rows of the original image that fall within them.
+     */
+    public FileImage(String filename, int startY, int height) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = reader(in, filename);
+            try {
+                int origWidth = reader.getWidth(0), origHeight = reader.getHeight(0);
+                int newHeight = getPowerOfTwoGreaterThan(origHeight);
+                if (startY < 0 || height <= 0 || startY + height > newHeight)
+                    throw new IllegalArgumentException();
+                int yMarginFloor = (int)Math.floor((newHeight-origHeight)/2.0f);
+                int firstOrigRow = Math.max(0, startY - yMarginFloor);
+                int lastOrigRow = Math.min(origHeight, startY + height - yMarginFloor);
+                java.awt.image.BufferedImage im = null;
+                if (firstOrigRow < lastOrigRow) {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(new Rectangle(0, firstOrigRow, origWidth, lastOrigRow - firstOrigRow));
+                    im = reader.read(0, param);
+                }
+                pixelArray = new Color[height][];
+                fillRows(im, origWidth, origHeight, startY, firstOrigRow);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
 
+    /**
+     * Fills pixelArray, whose rows are the rows of the padded image starting at startY, and indexes its
+     * uniform regions.
+     * @param im the decoded rows of the original image, starting at row firstOrigRow of the original image, or
+     *           null if only margins are needed.
+     */
+    private void fillRows(java.awt.image.BufferedImage im, int origWidth, int origHeight,
+                          int startY, int firstOrigRow) {
         int newWidth = getPowerOfTwoGreaterThan(origWidth);
         int newHeight = getPowerOfTwoGreaterThan(origHeight);
 
-        pixelArray = new Color[newHeight][newWidth];
         float xMargin = (newWidth-origWidth)/2.0f;
         float yMargin = (newHeight-origHeight)/2.0f;
 
-        for(int y = 0 ; y < pixelArray.length ; y++) {
-            for(int x = 0 ; x < pixelArray[y].length ; x++) {
+        for(int row = 0 ; row < pixelArray.length ; row++) {
+            int y = startY + row;
+            pixelArray[row] = new Color[newWidth];
+            for(int x = 0 ; x < newWidth ; x++) {
                 //if this pixel is not in the margins, take value from image
-                if(x >= (int)Math.floor(xMargin) && x < pixelArray[y].length-Math.ceil(xMargin) &&
-                   y >= (int)Math.floor(yMargin) && y < pixelArray.length-Math.ceil(yMargin)) {
-                pixelArray[y][x] = new Color(im.getRGB(
+                if(x >= (int)Math.floor(xMargin) && x < newWidth-Math.ceil(xMargin) &&
+                   y >= (int)Math.floor(yMargin) && y < newHeight-Math.ceil(yMargin)) {
+                pixelArray[row][x] = new Color(im.getRGB(
                         x-(int)Math.floor(xMargin),
-                        y-(int)Math.floor(yMargin)));
+                        y-(int)Math.floor(yMargin)-firstOrigRow));
                 }
                 else { //otherwise, color with default background color
-                    pixelArray[y][x] = DEFAULT_COLOR;
+                    pixelArray[row][x] = DEFAULT_COLOR;
                 }
             }
         }
+        uniformityIndex = new UniformityIndex(pixelArray);
     }
 
     @Override
@@ -56,7 +106,25 @@ class FileImage implements Image {
         return pixelArray[y][x]; //if invalid indices, let the array throw the exception
     }
 
-    private static int getPowerOfTwoGreaterThan(int num) {
+    @Override
+    public Color getUniformColor(int x, int y, int size) {
+        return uniformityIndex.uniformColor(x, y, size);
+    }
+
+    /**
+     * Finds a reader for the given image file stream, and sets the stream as its input.
+     * @throws IOException if the file's format isn't supported.
+     */
+    static ImageReader reader(ImageInputStream in, String filename) throws IOException {
+        Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+        if (readers == null || !readers.hasNext())
+            throw new IOException("Unsupported image format: " + filename);
+        ImageReader reader = readers.next();
+        reader.setInput(in);
+        return reader;
+    }
+
+    static int getPowerOfTwoGreaterThan(int num) {
         return (int)Math.pow(2, Math.ceil(Math.log(num)/Math.log(2)));
     }
 }
@@ -27,6 +27,52 @@ public interface Image {
         }
     }
 
+    /**
+     * Open a horizontal stripe of the image that fromFile(filename) would return: the rows
+     * [startY, startY+height) of it, with the same width. Only the needed part of the file is kept in memory,
+     * so a stripe of a very large image can be opened when the whole image can't.
+     * @param filename a path to an image file on disk
+     * @param startY the first row of the stripe in the padded image
+     * @param height the number of rows in the stripe
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image stripeFromFile(String filename, int startY, int height) {
+        try {
+            return new FileImage(filename, startY, height);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Read only the header of an image file. The returned image has the dimensions that fromFile(filename)
+     * would return, but no pixels, so it can be opened for an image too large to decode; its getPixel throws
+     * UnsupportedOperationException.
+     * @param filename a path to an image file on disk
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image headerFromFile(String filename) {
+        try {
+            return new ImageHeader(filename);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether a square region of the image is of a single color, without going over its pixels.
+     * Implementations that can't tell cheaply return null, so null doesn't mean the region isn't uniform.
+     * @param x the column of the region's top left corner
+     * @param y the row of the region's top left corner
+     * @param size the width and height, in pixels, of the region
+     * @return the color of all the region's pixels if it is known to be uniform, null otherwise
+     */
+    default Color getUniformColor(int x, int y, int size) {
+        return null;
+    }
+
     /**
      * Allows iterating the pixels' colors by order (first row, second row and so on).
      * @return an Iterable<Color> that can be traversed with a foreach loop
@@ -36,6 +82,17 @@ public interface Image {
                 this, this::getPixel,1,1);
     }
 
+    /**
+     * Returns a single square sub-image, without going over its pixels.
+     * @param x the column of the sub-image's top left corner
+     * @param y the row of the sub-image's top left corner
+     * @param pixels the width and height, in pixels, of the sub-image
+     * @return the sub-image
+     */
+    default Image squareSubImage(int x, int y, int pixels) {
+        return new ImageView(this, x, y, pixels, pixels);
+    }
+
     /**
      * Breaks the image down to square sub-images of a specified width/height in pixels.
      * @param pixels the width and height, in pixels, of each square sub-image
@@ -44,7 +101,7 @@ public interface Image {
     default Iterable<Image> squareSubImagesOfSize(int pixels) {
         return new ImageIterableProperty<>(
                 this,
-                (x,y)->new ImageView(this,x,y,pixels,pixels),
+                (x,y)->squareSubImage(x,y,pixels),
                 pixels,
                 pixels);
     }
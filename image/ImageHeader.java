@@ -0,0 +1,45 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A package-private class of the package image.
+ * The dimensions of an image file, padded to powers of 2 like FileImage pads them, without its pixels. Only the
+ * file's header is read.
+ */
+class ImageHeader implements Image {
+    private final int width;
+    private final int height;
+
+    public ImageHeader(String filename) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(filename))) {
+            ImageReader reader = FileImage.reader(in, filename);
+            try {
+                width = FileImage.getPowerOfTwoGreaterThan(reader.getWidth(0));
+                height = FileImage.getPowerOfTwoGreaterThan(reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        throw new UnsupportedOperationException("Only the header of the image was read");
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+}
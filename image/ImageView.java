@@ -48,6 +48,13 @@ class ImageView implements Image {
         return img.getPixel(startX+x, startY+y);
     }
 
+    @Override
+    public Color getUniformColor(int x, int y, int size) {
+        if(x < 0 || y < 0 || size <= 0 || x+size > getWidth() || y+size > getHeight())
+            throw new IndexOutOfBoundsException();
+        return img.getUniformColor(startX+x, startY+y, size);
+    }
+
     @Override
     public int getWidth() {
         return width;
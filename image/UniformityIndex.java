@@ -0,0 +1,105 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * A package-private class of the package image.
+ * A quadtree over the pixels of an image that tells, for aligned square regions, whether all the region's pixels
+ * have the same color. The leaves are blocks of LEAF_SIZE X LEAF_SIZE pixels, and every node of the next level
+ * covers 2 X 2 nodes of its level, so a region of size LEAF_SIZE * 2^k is answered by a single node of level k.
+ */
+class UniformityIndex {
+    private static final int LEAF_SIZE = 4;
+
+    private final int[][] colors;
+    private final boolean[][] uniform;
+    private final int[] levelRows;
+    private final int[] levelCols;
+
+    /**
+     * Builds the index from the pixels of an image, in a single pass over the pixels followed by
+     * merging the nodes level by level.
+     * @param pixels the image's pixels, row after row; all the rows are of the same length.
+     */
+    public UniformityIndex(Color[][] pixels) {
+        int height = pixels.length;
+        int width = height == 0 ? 0 : pixels[0].length;
+        int numLevels = 0;
+        for (int size = LEAF_SIZE; size <= width && size <= height; size *= 2)
+            numLevels++;
+        colors = new int[numLevels][];
+        uniform = new boolean[numLevels][];
+        levelRows = new int[numLevels];
+        levelCols = new int[numLevels];
+        if (numLevels == 0)
+            return;
+        buildLeaves(pixels, height / LEAF_SIZE, width / LEAF_SIZE);
+        for (int level = 1; level < numLevels; level++)
+            buildLevel(level);
+    }
+
+    private void buildLeaves(Color[][] pixels, int rows, int cols) {
+        levelRows[0] = rows;
+        levelCols[0] = cols;
+        colors[0] = new int[rows * cols];
+        uniform[0] = new boolean[rows * cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int color = pixels[row * LEAF_SIZE][col * LEAF_SIZE].getRGB();
+                boolean isUniform = true;
+                for (int y = row * LEAF_SIZE; y < (row + 1) * LEAF_SIZE && isUniform; y++) {
+                    for (int x = col * LEAF_SIZE; x < (col + 1) * LEAF_SIZE && isUniform; x++)
+                        isUniform = pixels[y][x].getRGB() == color;
+                }
+                colors[0][row * cols + col] = color;
+                uniform[0][row * cols + col] = isUniform;
+            }
+        }
+    }
+
+    private void buildLevel(int level) {
+        int childCols = levelCols[level - 1];
+        int rows = levelRows[level - 1] / 2;
+        int cols = childCols / 2;
+        levelRows[level] = rows;
+        levelCols[level] = cols;
+        colors[level] = new int[rows * cols];
+        uniform[level] = new boolean[rows * cols];
+        int[] childColors = colors[level - 1];
+        boolean[] childUniform = uniform[level - 1];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int topLeft = 2 * row * childCols + 2 * col;
+                int color = childColors[topLeft];
+                colors[level][row * cols + col] = color;
+                uniform[level][row * cols + col] =
+                        childUniform[topLeft] && childUniform[topLeft + 1] &&
+                        childUniform[topLeft + childCols] && childUniform[topLeft + childCols + 1] &&
+                        childColors[topLeft + 1] == color &&
+                        childColors[topLeft + childCols] == color &&
+                        childColors[topLeft + childCols + 1] == color;
+            }
+        }
+    }
+
+    /**
+     * Returns the color of the square region of the given size whose top left corner is (x, y), if all its
+     * pixels have that color.
+     * @return the region's single color, or null if the region isn't uniform, or it isn't aligned to a node of
+     * the index (its size isn't LEAF_SIZE times a power of 2, or x or y aren't multiples of the size).
+     */
+    public Color uniformColor(int x, int y, int size) {
+        if (size < LEAF_SIZE || size % LEAF_SIZE != 0 || Integer.bitCount(size / LEAF_SIZE) != 1 ||
+            x % size != 0 || y % size != 0)
+            return null;
+        int level = Integer.numberOfTrailingZeros(size / LEAF_SIZE);
+        if (level >= colors.length)
+            return null;
+        int row = y / size;
+        int col = x / size;
+        if (row >= levelRows[level] || col >= levelCols[level])
+            return null;
+        int node = row * levelCols[level] + col;
+        return uniform[level][node] ? new Color(colors[level][node], true) : null;
+    }
+}
@@ -0,0 +1,15 @@
+package stats;
+
+/**
+ * The events of converting an image to ASCII art that are counted.
+ */
+public enum Counter {
+    TILES_PROCESSED,
+    TILES_PRECOMPUTED,
+    UNIFORM_TILES,
+    BRIGHTNESS_CACHE_HITS,
+    BRIGHTNESS_CACHE_MISSES,
+    GRID_CACHE_HITS,
+    GRID_CACHE_MISSES,
+    BYTES_WRITTEN
+}
@@ -0,0 +1,13 @@
+package stats;
+
+/**
+ * The stages of converting an image to ASCII art that are timed.
+ */
+public enum Stage {
+    DECODE,
+    GLYPH_RENDER,
+    BRIGHTNESS,
+    PRECOMPUTE,
+    MATCH,
+    OUTPUT
+}
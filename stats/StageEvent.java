@@ -0,0 +1,25 @@
+package stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event recorded for every run of a stage, so the stages show up in a flight recording next to GC and
+ * thread activity. The event's duration is the stage's duration.
+ */
+@Name("ascii_art.Stage")
+@Label("ASCII Art Stage")
+@Category("ASCII Art")
+@Description("One run of a stage of converting an image to ASCII art")
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
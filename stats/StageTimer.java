@@ -0,0 +1,40 @@
+package stats;
+
+/**
+ * Measures one run of a stage, from its creation until it is closed. Meant to be used in a
+ * try-with-resources statement around the stage's code, on a single thread. A run that starts in an
+ * untracked task isn't recorded.
+ */
+public class StageTimer implements AutoCloseable {
+    private final Stage stage;
+    private final boolean tracked;
+    private final long startNanos;
+    private final long startAllocatedBytes;
+    private final StageEvent event = new StageEvent();
+
+    StageTimer(Stage stage) {
+        this.stage = stage;
+        tracked = Stats.isTracked();
+        event.begin();
+        startAllocatedBytes = Stats.currentThreadAllocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the run and adds its duration and allocations to the stage's statistics.
+     */
+    @Override
+    public void close() {
+        if (!tracked)
+            return;
+        long nanos = System.nanoTime() - startNanos;
+        long allocatedBytes = Math.max(0, Stats.currentThreadAllocatedBytes() - startAllocatedBytes);
+        Stats.record(stage, nanos, allocatedBytes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage.name();
+            event.allocatedBytes = allocatedBytes;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package stats;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Facade for the stats module. Keeps, for the whole process, the number of runs, total and maximal duration and
+ * allocated bytes of every stage, and the value of every counter. All the methods are thread safe and cheap
+ * enough to be called once per sub image. Work that isn't part of rendering can be run untracked, so it
+ * doesn't show in the statistics.
+ */
+public class Stats {
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final String STAGE_FORMAT = "%-13s runs=%d total=%.1fms max=%.1fms allocated=%dKB\n";
+    private static final String COUNTER_FORMAT = "%-26s %d\n";
+    private static final String HIT_RATE_FORMAT = "%-26s %.1f%%\n";
+    private static final String HIT_RATE = "BRIGHTNESS_CACHE_HIT_RATE";
+
+    private static final Map<Stage, StageStats> STAGES = new EnumMap<>(Stage.class);
+    private static final Map<Counter, LongAdder> COUNTERS = new EnumMap<>(Counter.class);
+    private static final ThreadLocal<Boolean> UNTRACKED = ThreadLocal.withInitial(() -> false);
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATIONS_SUPPORTED =
+            THREAD_BEAN instanceof com.sun.management.ThreadMXBean &&
+            ((com.sun.management.ThreadMXBean) THREAD_BEAN).isThreadAllocatedMemorySupported();
+
+    static {
+        for (Stage stage : Stage.values())
+            STAGES.put(stage, new StageStats());
+        for (Counter counter : Counter.values())
+            COUNTERS.put(counter, new LongAdder());
+    }
+
+    private static class StageStats {
+        final LongAdder runs = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final LongAdder allocatedBytes = new LongAdder();
+    }
+
+    private Stats() {
+    }
+
+    /**
+     * Starts timing a run of the given stage.
+     * @param stage the stage that starts running.
+     * @return a timer that ends the run when closed.
+     */
+    public static StageTimer time(Stage stage) {
+        return new StageTimer(stage);
+    }
+
+    public static void increment(Counter counter) {
+        if (!UNTRACKED.get())
+            COUNTERS.get(counter).increment();
+    }
+
+    public static void add(Counter counter, long amount) {
+        if (!UNTRACKED.get())
+            COUNTERS.get(counter).add(amount);
+    }
+
+    /**
+     * Runs the given task on the current thread without recording its stages and counters, for work that
+     * isn't part of rendering, like measuring the machine.
+     * @param task the work to run.
+     * @return the task's result.
+     */
+    public static <T> T untracked(Supplier<T> task) {
+        boolean wasUntracked = UNTRACKED.get();
+        UNTRACKED.set(true);
+        try {
+            return task.get();
+        } finally {
+            UNTRACKED.set(wasUntracked);
+        }
+    }
+
+    public static long get(Counter counter) {
+        return COUNTERS.get(counter).sum();
+    }
+
+    /**
+     * Zeroes all the stages' statistics and all the counters.
+     */
+    public static void reset() {
+        for (StageStats stageStats : STAGES.values()) {
+            stageStats.runs.reset();
+            stageStats.totalNanos.reset();
+            stageStats.maxNanos.reset();
+            stageStats.allocatedBytes.reset();
+        }
+        COUNTERS.values().forEach(LongAdder::reset);
+    }
+
+    /**
+     * @return a human readable report, one line for each stage and for each counter.
+     */
+    public static String format() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<Stage, StageStats> entry : STAGES.entrySet()) {
+            StageStats stageStats = entry.getValue();
+            report.append(String.format(STAGE_FORMAT, entry.getKey(), stageStats.runs.sum(),
+                    stageStats.totalNanos.sum() / NANOS_IN_MILLI, stageStats.maxNanos.get() / NANOS_IN_MILLI,
+                    stageStats.allocatedBytes.sum() / 1024));
+        }
+        for (Map.Entry<Counter, LongAdder> entry : COUNTERS.entrySet())
+            report.append(String.format(COUNTER_FORMAT, entry.getKey(), entry.getValue().sum()));
+        report.append(String.format(HIT_RATE_FORMAT, HIT_RATE, 100 * brightnessCacheHitRate()));
+        return report.toString();
+    }
+
+    /**
+     * @return a single line JSON object with a "stages" object, that maps each stage to its runs, totalNanos,
+     * maxNanos and allocatedBytes, and a "counters" object, that maps each counter to its value.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"stages\":{");
+        String separator = "";
+        for (Map.Entry<Stage, StageStats> entry : STAGES.entrySet()) {
+            StageStats stageStats = entry.getValue();
+            json.append(separator).append(String.format(
+                    "\"%s\":{\"runs\":%d,\"totalNanos\":%d,\"maxNanos\":%d,\"allocatedBytes\":%d}",
+                    entry.getKey(), stageStats.runs.sum(), stageStats.totalNanos.sum(), stageStats.maxNanos.get(),
+                    stageStats.allocatedBytes.sum()));
+            separator = ",";
+        }
+        json.append("},\"counters\":{");
+        separator = "";
+        for (Map.Entry<Counter, LongAdder> entry : COUNTERS.entrySet()) {
+            json.append(separator).append(String.format("\"%s\":%d", entry.getKey(), entry.getValue().sum()));
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * @return whether the current thread's stages and counters are recorded, that is, it isn't running an
+     * untracked task.
+     */
+    static boolean isTracked() {
+        return !UNTRACKED.get();
+    }
+
+    static void record(Stage stage, long nanos, long allocatedBytes) {
+        StageStats stageStats = STAGES.get(stage);
+        stageStats.runs.increment();
+        stageStats.totalNanos.add(nanos);
+        stageStats.maxNanos.accumulate(nanos);
+        stageStats.allocatedBytes.add(allocatedBytes);
+    }
+
+    /**
+     * @return the number of bytes the current thread allocated since it started, or 0 if the JVM doesn't
+     * support measuring it.
+     */
+    static long currentThreadAllocatedBytes() {
+        if (!ALLOCATIONS_SUPPORTED)
+            return 0;
+        return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    private static double brightnessCacheHitRate() {
+        long hits = get(Counter.BRIGHTNESS_CACHE_HITS);
+        long lookups = hits + get(Counter.BRIGHTNESS_CACHE_MISSES);
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
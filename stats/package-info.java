@@ -0,0 +1,5 @@
+/**
+ * The module responsible for measuring the time, counts and allocations of each stage of converting an image
+ * to ASCII art, and reporting them as text, JSON or JFR events.
+ */
+package stats;